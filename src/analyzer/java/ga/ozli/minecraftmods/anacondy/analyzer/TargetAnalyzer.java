@@ -0,0 +1,1123 @@
+package ga.ozli.minecraftmods.anacondy.analyzer;
+
+import ga.ozli.minecraftmods.anacondy.transformer.EffectivelyFinalFields;
+import ga.ozli.minecraftmods.anacondy.transformer.IdentifierLiterals;
+import ga.ozli.minecraftmods.anacondy.transformer.ReadOnlyArrays;
+import ga.ozli.minecraftmods.anacondy.transformer.RecordEligibility;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.io.IOException;
+import java.lang.constant.ConstantDescs;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+/**
+ * Build-time scanner for the deobfuscated Minecraft jars that finds candidates for Anacondy's transformers, so that
+ * their target lists don't need to be redone by hand for every MC version.
+ * <p>Run via the {@code generateAnacondyRules} Gradle task. Usage: {@code TargetAnalyzer <output file> <jar>...}</p>
+ * <p>Setting {@code -Danacondy.analyzer.recordReport=<file>} additionally writes a report of every class checked for
+ * record conversion and why it was or wasn't picked, to help find further targets for ClassToRecordTransformer's
+ * hand-written list.</p>
+ * <p>The output is a plain text file with one rule per line, which is loaded at runtime by {@code GeneratedRules}:</p>
+ * <ul>
+ *     <li>{@code singleton <class> <field> <getter name> <getter desc>}</li>
+ *     <li>{@code effectively-final <owner> <name> <desc> <static|instance>}</li>
+ *     <li>{@code lazy-static <class> <field> <getter name> <getter desc>}</li>
+ *     <li>{@code record <class>}</li>
+ *     <li>{@code not-record <class> <reason>}</li>
+ *     <li>{@code singleton-type <class>}</li>
+ *     <li>{@code singleton-copy <owner> <name> <desc>}</li>
+ *     <li>{@code field-copy-holder <class>}</li>
+ *     <li>{@code singleton-lambda-holder <class>}</li>
+ *     <li>{@code enum-values-reader <class> <enum>}</li>
+ *     <li>{@code switch-map <holder> <field> <enum> <key>=<constant>:<ordinal>,...}</li>
+ *     <li>{@code switch-map-reader <class>}</li>
+ *     <li>{@code default-state-reader <class>}</li>
+ *     <li>{@code registry-constant-reader <class>}</li>
+ *     <li>{@code identifier-literal-reader <class>}</li>
+ * </ul>
+ */
+public final class TargetAnalyzer {
+    private static final List<String> SCANNED_PACKAGES = List.of(
+            "net/minecraft/", "com/mojang/blaze3d/", "com/mojang/realmsclient/"
+    );
+
+    /** Also read so that their writes to and calls into the scanned classes are seen, but not themselves targeted */
+    private static final List<String> INDEXED_ONLY_PACKAGES = List.of("net/minecraftforge/");
+
+    private static final String MINECRAFT_CLASS_NAME = "net/minecraft/client/Minecraft";
+
+    /** Implemented by Forge's enums that mods can add constants to at runtime */
+    private static final String EXTENSIBLE_ENUM_INTERFACE = "net/minecraftforge/common/IExtensibleEnum";
+
+    /** Methods whose use suggests fields may be looked up by name and written reflectively, as "owner.name" */
+    private static final Set<String> REFLECTIVE_FIELD_LOOKUPS = Set.of(
+            "java/lang/Class.getField",
+            "java/lang/Class.getDeclaredField",
+            "java/lang/invoke/MethodHandles$Lookup.findSetter",
+            "java/lang/invoke/MethodHandles$Lookup.findVarHandle",
+            "net/minecraftforge/fml/util/ObfuscationReflectionHelper.findField",
+            "net/minecraftforge/fml/util/ObfuscationReflectionHelper.setPrivateValue"
+    );
+
+    /** Methods whose use suggests all fields of a class may be looked up and written reflectively */
+    private static final Set<String> REFLECTIVE_FIELD_ENUMERATIONS = Set.of(
+            "java/lang/Class.getFields",
+            "java/lang/Class.getDeclaredFields"
+    );
+
+    /** The classes holding the game's blocks and fluids -> the name + desc of the getter of each one's default state */
+    private static final Map<String, String> DEFAULT_STATE_GETTERS = Map.of(
+            "net/minecraft/world/level/block/Blocks",
+            "defaultBlockState()Lnet/minecraft/world/level/block/state/BlockState;",
+            "net/minecraft/world/level/material/Fluids",
+            "defaultFluidState()Lnet/minecraft/world/level/material/FluidState;"
+    );
+
+    private static final Set<String> REGISTRY_LOOKUP_METHODS = Set.of("getValue", "getValueOrThrow", "getOrThrow");
+    private static final Set<String> CONSTANT_KEY_DESCS = Set.of(
+            "Lnet/minecraft/resources/ResourceKey;", "Lnet/minecraft/resources/Identifier;"
+    );
+    private static final Set<String> HOLDER_DESCS = Set.of("Lnet/minecraft/core/Holder;", "Lnet/minecraft/core/Holder$Reference;");
+
+    private static final Set<String> UNSAFE_CLASSES = Set.of("sun/misc/Unsafe", "jdk/internal/misc/Unsafe");
+
+    /** Generic collections keyed by identity, capturing the key type as the second group */
+    private static final Pattern IDENTITY_COLLECTION_SIGNATURE = Pattern.compile(
+            "^L(java/util/IdentityHashMap|it/unimi/dsi/fastutil/objects/Reference\\w*)<L([^;<]+)[;<]"
+    );
+
+    private final Map<String, ClassNode> classes;
+
+    /** Declaring class + "." + name + ":" + desc -> the methods that write to it, as "class.method" */
+    private final Map<String, List<String>> fieldWrites = new HashMap<>();
+
+    /** Classes that are extended by at least one other scanned class */
+    private final Set<String> subclassed = new HashSet<>();
+
+    /** Owner + "." + name + desc of the methods called or referenced from outside their own class */
+    private final Set<String> calledFromOtherClasses = new HashSet<>();
+
+    /** Class -> the methods that instantiate it, as "class.method" */
+    private final Map<String, List<String>> instantiations = new HashMap<>();
+
+    /** Keys of the fields that have null explicitly written to them */
+    private final Set<String> nullWritten = new HashSet<>();
+
+    /** String constants in classes that look up fields reflectively, any of which may be a field name */
+    private final Set<String> reflectivelyNamed = new HashSet<>();
+
+    /** Class constants in classes that look up or enumerate fields reflectively, any of which may have theirs written */
+    private final Set<String> reflectivelyAccessed = new HashSet<>();
+
+    /** Class constants in classes that use Unsafe, any of which may have its fields accessed by offset */
+    private final Set<String> unsafeAccessed = new HashSet<>();
+
+    /** Class -> a use relying on its instances' identity, such as locking on them, as "class.method" or "class.field" */
+    private final Map<String, String> identitySensitive = new HashMap<>();
+
+    /** Class -> why it was or wasn't picked as a record candidate, for the report */
+    private final Map<String, String> recordReport = new TreeMap<>();
+
+    private TargetAnalyzer(Map<String, ClassNode> classes) {
+        this.classes = classes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TargetAnalyzer <output file> <jar>...");
+            System.exit(1);
+        }
+
+        var classes = new HashMap<String, ClassNode>();
+        for (int i = 1; i < args.length; i++) {
+            var path = Path.of(args[i]);
+            if (!Files.isRegularFile(path) || !path.toString().endsWith(".jar")) continue;
+
+            readJar(path, classes);
+        }
+
+        // An empty rule file would silently turn most transformers into no-ops, so refuse to write one
+        if (classes.isEmpty()) {
+            System.err.println("Found no game classes to scan in the given jars");
+            System.exit(1);
+        }
+
+        var analyzer = new TargetAnalyzer(classes);
+        var rules = analyzer.analyze();
+
+        var output = Path.of(args[0]);
+        if (output.getParent() != null)
+            Files.createDirectories(output.getParent());
+
+        var lines = new ArrayList<String>(rules.size() + 1);
+        lines.add("# Generated by the generateAnacondyRules task from " + classes.size() + " classes - do not edit");
+        lines.addAll(rules);
+        Files.write(output, lines);
+
+        System.out.println("Wrote " + rules.size() + " rules to " + output);
+
+        var recordReport = System.getProperty("anacondy.analyzer.recordReport");
+        if (recordReport != null)
+            analyzer.writeRecordReport(Path.of(recordReport));
+    }
+
+    private static void readJar(Path jarPath, Map<String, ClassNode> classes) throws IOException {
+        try (var jar = new JarFile(jarPath.toFile())) {
+            var entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                var entry = entries.nextElement();
+                var name = entry.getName();
+                if (!name.endsWith(".class")
+                        || (!isScanned(name) && INDEXED_ONLY_PACKAGES.stream().noneMatch(name::startsWith)))
+                    continue;
+
+                var className = name.substring(0, name.length() - ".class".length());
+                if (classes.containsKey(className)) continue;
+
+                try (var in = jar.getInputStream(entry)) {
+                    var classNode = new ClassNode();
+                    new ClassReader(in).accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                    classes.put(className, classNode);
+                }
+            }
+        }
+    }
+
+    private static boolean isScanned(String className) {
+        return SCANNED_PACKAGES.stream().anyMatch(className::startsWith);
+    }
+
+    private List<ClassNode> scannedClasses() {
+        return classes.values().stream()
+                .filter(classNode -> isScanned(classNode.name))
+                .toList();
+    }
+
+    private Set<String> analyze() {
+        indexClasses();
+
+        var rules = new TreeSet<String>();
+        var effectivelyFinal = findEffectivelyFinalFields(rules);
+        var singletons = findSingletons(rules);
+        findLazyStaticGetters(rules, effectivelyFinal);
+        findRecordCandidates(rules);
+        var singletonTypes = findSingletonTypes(rules, effectivelyFinal, singletons);
+        findFieldCopyHolders(rules, effectivelyFinal, singletonTypes);
+        findSingletonLambdaHolders(rules, singletonTypes);
+        findEnumValuesReaders(rules);
+        findSwitchMaps(rules);
+        findDefaultStateReaders(rules);
+        findRegistryConstantReaders(rules);
+        findIdentifierLiteralReaders(rules);
+        return rules;
+    }
+
+    private void indexClasses() {
+        for (var classNode : classes.values()) {
+            if (classNode.superName != null)
+                subclassed.add(classNode.superName);
+
+            var usesReflection = false;
+            var enumeratesFields = false;
+            var usesUnsafe = false;
+            var stringConstants = new HashSet<String>();
+            var classConstants = new HashSet<String>();
+            for (var fieldNode : classNode.fields)
+                indexIdentityCollection(classNode, fieldNode);
+
+            for (var methodNode : classNode.methods) {
+                var usesIdentity = false;
+                for (var insn : methodNode.instructions) {
+                    switch (insn) {
+                        case FieldInsnNode fieldInsn when insn.getOpcode() == Opcodes.PUTFIELD
+                                || insn.getOpcode() == Opcodes.PUTSTATIC -> {
+                            var key = fieldKey(fieldInsn);
+                            fieldWrites.computeIfAbsent(key, k -> new ArrayList<>())
+                                    .add(classNode.name + '.' + methodNode.name);
+
+                            var previous = insn.getPrevious();
+                            while (previous != null && previous.getOpcode() < 0)
+                                previous = previous.getPrevious();
+                            if (previous != null && previous.getOpcode() == Opcodes.ACONST_NULL)
+                                nullWritten.add(key);
+                        }
+                        case TypeInsnNode typeInsn when insn.getOpcode() == Opcodes.NEW ->
+                                instantiations.computeIfAbsent(typeInsn.desc, k -> new ArrayList<>())
+                                        .add(classNode.name + '.' + methodNode.name);
+                        case MethodInsnNode methodInsn -> {
+                            if (!methodInsn.owner.equals(classNode.name))
+                                calledFromOtherClasses.add(methodInsn.owner + '.' + methodInsn.name + methodInsn.desc);
+                            if (REFLECTIVE_FIELD_LOOKUPS.contains(methodInsn.owner + '.' + methodInsn.name))
+                                usesReflection = true;
+                            if (REFLECTIVE_FIELD_ENUMERATIONS.contains(methodInsn.owner + '.' + methodInsn.name))
+                                enumeratesFields = true;
+                            if (UNSAFE_CLASSES.contains(methodInsn.owner))
+                                usesUnsafe = true;
+                            if (methodInsn.owner.equals("java/lang/System") && methodInsn.name.equals("identityHashCode"))
+                                usesIdentity = true;
+                        }
+                        case LdcInsnNode ldcInsn -> {
+                            if (ldcInsn.cst instanceof String string)
+                                stringConstants.add(string);
+                            else if (ldcInsn.cst instanceof Type type && type.getSort() == Type.OBJECT)
+                                classConstants.add(type.getInternalName());
+                            else
+                                indexHandle(classNode, methodNode, ldcInsn.cst);
+                        }
+                        case InvokeDynamicInsnNode indyInsn -> {
+                            for (var bsmArg : indyInsn.bsmArgs)
+                                indexHandle(classNode, methodNode, bsmArg);
+                        }
+                        default -> {
+                            if (insn.getOpcode() == Opcodes.MONITORENTER)
+                                usesIdentity = true;
+                        }
+                    }
+                }
+
+                if (usesIdentity)
+                    indexIdentityUses(classNode, methodNode);
+            }
+
+            if (usesReflection)
+                reflectivelyNamed.addAll(stringConstants);
+            if (usesReflection || enumeratesFields)
+                reflectivelyAccessed.addAll(classConstants);
+            if (usesUnsafe)
+                unsafeAccessed.addAll(classConstants);
+        }
+    }
+
+    /**
+     * Treats the key type of fields holding identity-based collections, such as {@code IdentityHashMap}, as relied upon
+     * for its identity.
+     */
+    private void indexIdentityCollection(ClassNode classNode, FieldNode fieldNode) {
+        if (fieldNode.signature == null) return;
+
+        var matcher = IDENTITY_COLLECTION_SIGNATURE.matcher(fieldNode.signature);
+        if (matcher.find())
+            identitySensitive.putIfAbsent(matcher.group(2), classNode.name + '.' + fieldNode.name);
+    }
+
+    /**
+     * Finds the types of the values locked on or passed to {@code System.identityHashCode()} in the given method,
+     * where they can be told from the instructions producing them.
+     */
+    private void indexIdentityUses(ClassNode classNode, MethodNode methodNode) {
+        Frame<SourceValue>[] frames;
+        try {
+            frames = new Analyzer<>(new SourceInterpreter()).analyze(classNode.name, methodNode);
+        } catch (AnalyzerException e) {
+            return;
+        }
+
+        for (var insn : methodNode.instructions) {
+            var isIdentityUse = insn.getOpcode() == Opcodes.MONITORENTER
+                    || insn instanceof MethodInsnNode methodInsn
+                            && methodInsn.owner.equals("java/lang/System")
+                            && methodInsn.name.equals("identityHashCode");
+            if (!isIdentityUse) continue;
+
+            var frame = frames[methodNode.instructions.indexOf(insn)];
+            if (frame == null) continue; // unreachable
+
+            var types = new HashSet<String>();
+            collectSourceTypes(classNode, methodNode, frames, topOfStack(frame), types, 0);
+            for (var type : types)
+                identitySensitive.putIfAbsent(type, classNode.name + '.' + methodNode.name);
+        }
+    }
+
+    /**
+     * Collects the types of the given value as declared by the instructions that produce it, following values through
+     * {@code DUP}s and local variables.
+     */
+    private static void collectSourceTypes(
+            ClassNode classNode,
+            MethodNode methodNode,
+            Frame<SourceValue>[] frames,
+            SourceValue value,
+            Set<String> types,
+            int depth
+    ) {
+        if (depth > 4) return;
+
+        for (var source : value.insns) {
+            var sourceFrame = frames[methodNode.instructions.indexOf(source)];
+            switch (source) {
+                case VarInsnNode varInsn when varInsn.getOpcode() == Opcodes.ALOAD && sourceFrame != null -> {
+                    // local 0 is `this` in instance methods, unless something else has been stored in it
+                    var isThis = varInsn.var == 0
+                            && (methodNode.access & Opcodes.ACC_STATIC) == 0
+                            && sourceFrame.getLocal(0).insns.isEmpty();
+                    if (isThis)
+                        types.add(classNode.name);
+                    else
+                        collectSourceTypes(classNode, methodNode, frames, sourceFrame.getLocal(varInsn.var), types, depth + 1);
+                }
+                case VarInsnNode varInsn when varInsn.getOpcode() == Opcodes.ASTORE && sourceFrame != null ->
+                        collectSourceTypes(classNode, methodNode, frames, topOfStack(sourceFrame), types, depth + 1);
+                case FieldInsnNode fieldInsn -> addObjectType(Type.getType(fieldInsn.desc), types);
+                case MethodInsnNode methodInsn -> addObjectType(Type.getReturnType(methodInsn.desc), types);
+                case TypeInsnNode typeInsn when typeInsn.getOpcode() == Opcodes.CHECKCAST
+                        || typeInsn.getOpcode() == Opcodes.NEW -> types.add(typeInsn.desc);
+                default -> {
+                    if (source.getOpcode() == Opcodes.DUP && sourceFrame != null)
+                        collectSourceTypes(classNode, methodNode, frames, topOfStack(sourceFrame), types, depth + 1);
+                }
+            }
+        }
+    }
+
+    private static SourceValue topOfStack(Frame<SourceValue> frame) {
+        return frame.getStack(frame.getStackSize() - 1);
+    }
+
+    private static void addObjectType(Type type, Set<String> types) {
+        if (type.getSort() == Type.OBJECT)
+            types.add(type.getInternalName());
+    }
+
+    /**
+     * Treats field setter handles as writes and method handles to other classes as calls, as the handle may be
+     * invoked at any time.
+     */
+    private void indexHandle(ClassNode classNode, MethodNode methodNode, Object constant) {
+        if (!(constant instanceof Handle handle)) return;
+
+        if (handle.getTag() == Opcodes.H_PUTFIELD || handle.getTag() == Opcodes.H_PUTSTATIC) {
+            var declaringClass = resolveFieldOwner(handle.getOwner(), handle.getName(), handle.getDesc());
+            var owner = declaringClass != null ? declaringClass.name : handle.getOwner();
+            fieldWrites.computeIfAbsent(owner + '.' + handle.getName() + ':' + handle.getDesc(), k -> new ArrayList<>())
+                    .add(classNode.name + '.' + methodNode.name);
+        } else if (!handle.getOwner().equals(classNode.name)) {
+            calledFromOtherClasses.add(handle.getOwner() + '.' + handle.getName() + handle.getDesc());
+        }
+    }
+
+    /**
+     * Finds non-final fields that are only ever written during construction. Instance fields are proven by the
+     * data-flow analysis in {@link EffectivelyFinalFields}, additionally requiring that no other class writes to them
+     * or looks them up reflectively. Static fields must only be written inside their owner's static initialiser.
+     * @return the keys of the found fields
+     */
+    private Set<String> findEffectivelyFinalFields(Set<String> rules) {
+        var found = new HashSet<String>();
+        for (var classNode : scannedClasses()) {
+            var provenInstanceFields = EffectivelyFinalFields.find(
+                    classNode,
+                    fieldNode -> isWrittenElsewhere(classNode, fieldNode) || reflectivelyNamed.contains(fieldNode.name),
+                    methodNode -> calledFromOtherClasses.contains(classNode.name + '.' + methodNode.name + methodNode.desc)
+            ).fieldNames();
+
+            for (var fieldNode : classNode.fields) {
+                if ((fieldNode.access & (Opcodes.ACC_FINAL | Opcodes.ACC_VOLATILE)) != 0) continue;
+
+                var isStatic = (fieldNode.access & Opcodes.ACC_STATIC) != 0;
+                var key = fieldKey(classNode.name, fieldNode);
+                var writes = fieldWrites.get(key);
+                if (writes == null) continue; // never written here, so likely set reflectively
+
+                if (isStatic) {
+                    var allowedWriter = classNode.name + '.' + ConstantDescs.CLASS_INIT_NAME;
+                    if (!writes.stream().allMatch(allowedWriter::equals)) continue;
+                    if (reflectivelyNamed.contains(fieldNode.name)) continue;
+                } else if (!provenInstanceFields.contains(fieldNode.name)) {
+                    continue;
+                }
+
+                found.add(key);
+                rules.add(String.join(" ",
+                        "effectively-final", classNode.name, fieldNode.name, fieldNode.desc, isStatic ? "static" : "instance"
+                ));
+            }
+        }
+        return found;
+    }
+
+    private boolean isWrittenElsewhere(ClassNode classNode, FieldNode fieldNode) {
+        var writes = fieldWrites.getOrDefault(fieldKey(classNode.name, fieldNode), List.of());
+        return !writes.stream().allMatch(writer -> writer.startsWith(classNode.name + '.'));
+    }
+
+    /**
+     * Finds classes that hold their own instance in a static field that's only written inside the class itself, along
+     * with a static no-args getter that simply returns that field.
+     * @return the found classes
+     */
+    private Set<String> findSingletons(Set<String> rules) {
+        var found = new HashSet<String>();
+        for (var classNode : scannedClasses()) {
+            var selfDesc = 'L' + classNode.name + ';';
+            for (var fieldNode : classNode.fields) {
+                if ((fieldNode.access & Opcodes.ACC_STATIC) == 0 || !fieldNode.desc.equals(selfDesc)) continue;
+
+                var writes = fieldWrites.getOrDefault(fieldKey(classNode.name, fieldNode), List.of());
+                if (writes.isEmpty() || !writes.stream().allMatch(writer -> writer.startsWith(classNode.name + '.')))
+                    continue;
+
+                for (var methodNode : classNode.methods) {
+                    if ((methodNode.access & Opcodes.ACC_STATIC) == 0
+                            || !methodNode.desc.equals("()" + selfDesc)
+                            || !isFieldReturningGetter(methodNode, classNode.name, fieldNode))
+                        continue;
+
+                    found.add(classNode.name);
+                    rules.add(String.join(" ",
+                            "singleton", classNode.name, fieldNode.name, methodNode.name, methodNode.desc
+                    ));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds static getters of reference fields that couldn't be proven effectively final, but are only ever set once,
+     * to a non-null value, from inside their own class, such as fields lazily initialised once the game has started.
+     * These are folded with {@code ConstantOnceNonNull} instead of being made final, so fields with setters that may
+     * reassign them are left alone.
+     */
+    private void findLazyStaticGetters(Set<String> rules, Set<String> effectivelyFinal) {
+        for (var classNode : scannedClasses()) {
+            var selfDesc = 'L' + classNode.name + ';';
+            for (var fieldNode : classNode.fields) {
+                if ((fieldNode.access & (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_VOLATILE)) != Opcodes.ACC_STATIC)
+                    continue;
+                if (fieldNode.desc.equals(selfDesc)) continue; // handled as a singleton
+                if (fieldNode.desc.charAt(0) != 'L' && fieldNode.desc.charAt(0) != '[') continue;
+
+                var key = fieldKey(classNode.name, fieldNode);
+                if (effectivelyFinal.contains(key) || nullWritten.contains(key)) continue;
+                if (reflectivelyNamed.contains(fieldNode.name)) continue;
+
+                var writes = fieldWrites.getOrDefault(key, List.of());
+                if (writes.size() != 1 || !writes.getFirst().startsWith(classNode.name + '.')
+                        || !isWrittenOnce(classNode, fieldNode))
+                    continue;
+
+                for (var methodNode : classNode.methods) {
+                    if ((methodNode.access & Opcodes.ACC_STATIC) == 0
+                            || !methodNode.desc.equals("()" + fieldNode.desc)
+                            || !isFieldReturningGetter(methodNode, classNode.name, fieldNode))
+                        continue;
+
+                    rules.add(String.join(" ",
+                            "lazy-static", classNode.name, fieldNode.name, methodNode.name, methodNode.desc
+                    ));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the field's only write runs at most once, by being in the static initialiser or guarded by
+     * {@code if (field == null)}, which can't pass again once it's been written to as null is never written to it
+     */
+    private static boolean isWrittenOnce(ClassNode classNode, FieldNode fieldNode) {
+        for (var methodNode : classNode.methods) {
+            for (var insn : methodNode.instructions) {
+                if (!(insn instanceof FieldInsnNode fieldInsn && isAccessOf(fieldInsn, Opcodes.PUTSTATIC, classNode.name, fieldNode)))
+                    continue;
+
+                return methodNode.name.equals(ConstantDescs.CLASS_INIT_NAME) || isNullGuarded(methodNode, fieldInsn, fieldNode);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the write is inside an {@code if (field == null)} block that can only be entered through its
+     * null check, which is {@code GETSTATIC field; IFNONNULL end} followed by the write before reaching {@code end}
+     */
+    private static boolean isNullGuarded(MethodNode methodNode, FieldInsnNode writeInsn, FieldNode fieldNode) {
+        var insns = methodNode.instructions;
+        int writeIndex = insns.indexOf(writeInsn);
+        for (var insn = writeInsn.getPrevious(); insn != null; insn = insn.getPrevious()) {
+            if (!(insn instanceof JumpInsnNode guardInsn && guardInsn.getOpcode() == Opcodes.IFNONNULL
+                    && realPrevious(guardInsn) instanceof FieldInsnNode readInsn
+                    && isAccessOf(readInsn, Opcodes.GETSTATIC, writeInsn.owner, fieldNode)))
+                continue;
+
+            int guardIndex = insns.indexOf(guardInsn);
+            if (insns.indexOf(guardInsn.label) <= writeIndex) continue;
+
+            // nothing may jump into the block from outside of it, skipping the check, or loop back to the write
+            for (var other : insns) {
+                int otherIndex = insns.indexOf(other);
+                var targets = switch (other) {
+                    case JumpInsnNode jumpInsn -> List.of(jumpInsn.label);
+                    case TableSwitchInsnNode switchInsn -> concat(switchInsn.dflt, switchInsn.labels);
+                    case LookupSwitchInsnNode switchInsn -> concat(switchInsn.dflt, switchInsn.labels);
+                    default -> List.<LabelNode>of();
+                };
+                for (var target : targets) {
+                    int targetIndex = insns.indexOf(target);
+                    if (targetIndex > guardIndex && targetIndex <= writeIndex
+                            && !(otherIndex > guardIndex && otherIndex < targetIndex))
+                        return false;
+                }
+            }
+            for (var tryCatch : methodNode.tryCatchBlocks) {
+                int handlerIndex = insns.indexOf(tryCatch.handler);
+                if (handlerIndex > guardIndex && handlerIndex <= writeIndex) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isAccessOf(FieldInsnNode fieldInsn, int opcode, String owner, FieldNode fieldNode) {
+        return fieldInsn.getOpcode() == opcode && fieldInsn.owner.equals(owner)
+                && fieldInsn.name.equals(fieldNode.name) && fieldInsn.desc.equals(fieldNode.desc);
+    }
+
+    private static List<LabelNode> concat(LabelNode first, List<LabelNode> rest) {
+        var labels = new ArrayList<LabelNode>(rest.size() + 1);
+        labels.add(first);
+        labels.addAll(rest);
+        return labels;
+    }
+
+    private static AbstractInsnNode realPrevious(AbstractInsnNode insn) {
+        var previous = insn.getPrevious();
+        while (previous != null && previous.getOpcode() < 0)
+            previous = previous.getPrevious();
+        return previous;
+    }
+
+    /**
+     * @return whether the method's body is exactly {@code GETSTATIC owner.field; ARETURN}
+     */
+    private static boolean isFieldReturningGetter(MethodNode methodNode, String owner, FieldNode fieldNode) {
+        var realInsns = new ArrayList<AbstractInsnNode>(2);
+        for (var insn : methodNode.instructions) {
+            if (insn.getOpcode() >= 0)
+                realInsns.add(insn);
+        }
+
+        return realInsns.size() == 2
+                && realInsns.get(0) instanceof FieldInsnNode fieldInsn
+                && fieldInsn.getOpcode() == Opcodes.GETSTATIC
+                && fieldInsn.owner.equals(owner)
+                && fieldInsn.name.equals(fieldNode.name)
+                && realInsns.get(1).getOpcode() == Opcodes.ARETURN;
+    }
+
+    /**
+     * Finds classes that ClassToRecordTransformer can safely convert: plain final classes in all but name, directly
+     * extending Object and with only final instance fields, that pass {@link RecordEligibility} and aren't ruled out
+     * by {@link #findRecordIneligibility(ClassNode)}.
+     * <p>Classes that would otherwise be eligible but are ruled out by the latter are recorded as {@code not-record}
+     * rules, so that ClassToRecordTransformer skips them if they're in its hand-written list.</p>
+     */
+    private void findRecordCandidates(Set<String> rules) {
+        for (var classNode : scannedClasses()) {
+            var localIneligibility = RecordEligibility.check(classNode);
+            if (localIneligibility != null) {
+                recordReport.put(classNode.name, "ineligible: " + localIneligibility);
+                continue;
+            }
+
+            var ineligibility = findRecordIneligibility(classNode);
+            if (ineligibility != null) {
+                rules.add(String.join(" ", "not-record", classNode.name, ineligibility));
+                recordReport.put(classNode.name, "ineligible: " + ineligibility);
+                continue;
+            }
+
+            rules.add("record " + classNode.name);
+            recordReport.put(classNode.name, "record");
+        }
+    }
+
+    /**
+     * The whole-game counterpart to {@link RecordEligibility#check(ClassNode)}.
+     * @return why the class can't be converted to a record as a single word, or null if nothing found rules it out
+     */
+    private String findRecordIneligibility(ClassNode classNode) {
+        if (subclassed.contains(classNode.name))
+            return "subclassed";
+
+        // Records' fields can't be written reflectively, nor have their offsets taken by Unsafe
+        if (unsafeAccessed.contains(classNode.name))
+            return "accessed-with-unsafe";
+
+        if (reflectivelyAccessed.contains(classNode.name))
+            return "fields-accessed-reflectively";
+
+        for (var fieldNode : classNode.fields) {
+            if ((fieldNode.access & Opcodes.ACC_STATIC) == 0 && reflectivelyNamed.contains(fieldNode.name))
+                return "field-looked-up-reflectively:" + fieldNode.name;
+        }
+
+        var identityUse = identitySensitive.get(classNode.name);
+        if (identityUse != null)
+            return "identity-sensitive:" + identityUse;
+
+        return null;
+    }
+
+    private void writeRecordReport(Path path) throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+
+        var lines = new ArrayList<String>(recordReport.size());
+        recordReport.forEach((className, result) -> lines.add(className + " - " + result));
+        Files.write(path, lines);
+
+        System.out.println("Wrote the record candidate report for " + recordReport.size() + " classes to " + path);
+    }
+
+    /**
+     * Finds the classes that only ever have a single instance, so that any non-null reference to one is the singleton.
+     * These are the Minecraft class, classes holding their own instance that are only instantiated by themselves, and
+     * classes only instantiated once inside the constructor of another such class and held in one of its (effectively)
+     * final fields, such as the game renderer.
+     * @return the found classes, including Minecraft
+     */
+    private Set<String> findSingletonTypes(Set<String> rules, Set<String> effectivelyFinal, Set<String> selfHeld) {
+        var found = new HashSet<String>();
+        found.add(MINECRAFT_CLASS_NAME);
+        for (var className : selfHeld) {
+            if (isOnlyInstantiatedBy(className, className, false))
+                found.add(className);
+        }
+
+        var pending = new ArrayList<>(found);
+        while (!pending.isEmpty()) {
+            var holder = classes.get(pending.removeLast());
+            if (holder == null) continue;
+
+            for (var fieldNode : holder.fields) {
+                if ((fieldNode.access & Opcodes.ACC_STATIC) != 0 || fieldNode.desc.charAt(0) != 'L') continue;
+                if ((fieldNode.access & Opcodes.ACC_FINAL) == 0 && !effectivelyFinal.contains(fieldKey(holder.name, fieldNode)))
+                    continue;
+
+                var type = fieldNode.desc.substring(1, fieldNode.desc.length() - 1);
+                if (found.contains(type) || !isScanned(type)) continue;
+
+                if (isOnlyInstantiatedBy(type, holder.name + '.' + ConstantDescs.INIT_NAME, true)) {
+                    found.add(type);
+                    pending.add(type);
+                }
+            }
+        }
+
+        for (var className : found)
+            rules.add("singleton-type " + className);
+
+        return found;
+    }
+
+    /**
+     * @param instantiator the class, or "class.method" if {@code exactlyOnce}, that must be the only one creating
+     *                     instances of the type
+     * @param exactlyOnce whether there must also be only a single instantiation site
+     */
+    private boolean isOnlyInstantiatedBy(String type, String instantiator, boolean exactlyOnce) {
+        var classNode = classes.get(type);
+        if (classNode == null || subclassed.contains(type)) return false;
+        if ((classNode.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) != 0) return false;
+
+        var sites = instantiations.getOrDefault(type, List.of());
+        if (sites.isEmpty()) return false;
+
+        return exactlyOnce
+                ? sites.size() == 1 && sites.getFirst().equals(instantiator)
+                : sites.stream().allMatch(site -> site.startsWith(instantiator + '.'));
+    }
+
+    /**
+     * Finds classes that read a copy of a singleton from an (effectively) final field, along with those fields as
+     * they're referenced by the reading instructions.
+     */
+    private void findFieldCopyHolders(Set<String> rules, Set<String> effectivelyFinal, Set<String> singletonTypes) {
+        for (var classNode : scannedClasses()) {
+            // its fields are handled by SingletonAccessedFieldsTransformer instead
+            if (classNode.name.equals(MINECRAFT_CLASS_NAME)) continue;
+
+            for (var methodNode : classNode.methods) {
+                for (var insn : methodNode.instructions) {
+                    if (!(insn instanceof FieldInsnNode fieldInsn
+                            && fieldInsn.getOpcode() == Opcodes.GETFIELD
+                            && fieldInsn.desc.charAt(0) == 'L'
+                            && singletonTypes.contains(fieldInsn.desc.substring(1, fieldInsn.desc.length() - 1))))
+                        continue;
+
+                    // the singleton's own class reads itself through `this`, not a copy
+                    if (fieldInsn.desc.equals('L' + classNode.name + ';')) continue;
+
+                    var declaringClass = resolveFieldOwner(fieldInsn.owner, fieldInsn.name, fieldInsn.desc);
+                    if (declaringClass == null) continue;
+
+                    var fieldNode = findField(declaringClass, fieldInsn.name, fieldInsn.desc);
+                    if ((fieldNode.access & Opcodes.ACC_FINAL) != 0
+                            || effectivelyFinal.contains(fieldKey(declaringClass.name, fieldNode))) {
+                        rules.add("field-copy-holder " + classNode.name);
+                        rules.add(String.join(" ", "singleton-copy", fieldInsn.owner, fieldInsn.name, fieldInsn.desc));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds classes creating lambdas or method references through {@code LambdaMetafactory.metafactory} that only
+     * capture singletons.
+     */
+    private void findSingletonLambdaHolders(Set<String> rules, Set<String> singletonTypes) {
+        for (var classNode : scannedClasses()) {
+            for (var methodNode : classNode.methods) {
+                for (var insn : methodNode.instructions) {
+                    if (insn instanceof InvokeDynamicInsnNode indyInsn
+                            && indyInsn.bsm.getOwner().equals("java/lang/invoke/LambdaMetafactory")
+                            && indyInsn.bsm.getName().equals("metafactory")
+                            && capturesOnlySingletons(indyInsn.desc, singletonTypes)) {
+                        rules.add("singleton-lambda-holder " + classNode.name);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean capturesOnlySingletons(String factoryDesc, Set<String> singletonTypes) {
+        var capturedTypes = Type.getArgumentTypes(factoryDesc);
+        if (capturedTypes.length == 0) return false;
+
+        for (var capturedType : capturedTypes) {
+            if (capturedType.getSort() != Type.OBJECT)
+                return false;
+
+            var internalName = capturedType.getInternalName();
+            if (!internalName.equals(MINECRAFT_CLASS_NAME) && !singletonTypes.contains(internalName))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds classes calling {@code values()} on one of the game's enums where the returned array is only ever read
+     * from, as determined by {@link ReadOnlyArrays}.
+     * <p>Forge's {@code IExtensibleEnum}s are skipped, as mods add constants to them at runtime that a copy of the
+     * array made before then would miss.</p>
+     */
+    private void findEnumValuesReaders(Set<String> rules) {
+        for (var classNode : scannedClasses()) {
+            for (var methodNode : classNode.methods) {
+                var calls = ReadOnlyArrays.find(classNode.name, methodNode, methodInsn ->
+                        methodInsn.getOpcode() == Opcodes.INVOKESTATIC
+                                && methodInsn.name.equals("values")
+                                && methodInsn.desc.equals("()[L" + methodInsn.owner + ';')
+                                && isScanned(methodInsn.owner)
+                                && classes.containsKey(methodInsn.owner)
+                                && (classes.get(methodInsn.owner).access & Opcodes.ACC_ENUM) != 0
+                                && !implementsInterface(methodInsn.owner, EXTENSIBLE_ENUM_INTERFACE)
+                );
+
+                for (var call : calls)
+                    rules.add(String.join(" ", "enum-values-reader", classNode.name, call.owner));
+            }
+        }
+    }
+
+    /**
+     * @return whether the class or any of its superclasses implements the interface, directly or through another
+     * interface. Classes outside of those read are assumed not to.
+     */
+    private boolean implementsInterface(String className, String interfaceName) {
+        var pending = new ArrayList<String>();
+        pending.add(className);
+        var visited = new HashSet<String>();
+        while (!pending.isEmpty()) {
+            var name = pending.removeLast();
+            if (name.equals(interfaceName)) return true;
+            if (!visited.add(name)) continue;
+
+            var classNode = classes.get(name);
+            if (classNode == null) continue;
+
+            pending.addAll(classNode.interfaces);
+            if (classNode.superName != null)
+                pending.add(classNode.superName);
+        }
+        return false;
+    }
+
+    /**
+     * Finds classes getting the default state of one of the game's blocks or fluids straight from its static field,
+     * such as {@code Blocks.AIR.defaultBlockState()}.
+     */
+    private void findDefaultStateReaders(Set<String> rules) {
+        for (var classNode : scannedClasses()) {
+            for (var methodNode : classNode.methods) {
+                for (var insn : methodNode.instructions) {
+                    if (!(insn instanceof MethodInsnNode methodInsn && methodInsn.getOpcode() == Opcodes.INVOKEVIRTUAL))
+                        continue;
+
+                    if (previousInsn(methodInsn) instanceof FieldInsnNode fieldInsn
+                            && fieldInsn.getOpcode() == Opcodes.GETSTATIC
+                            && (methodInsn.name + methodInsn.desc).equals(DEFAULT_STATE_GETTERS.get(fieldInsn.owner))) {
+                        rules.add("default-state-reader " + classNode.name);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds classes looking up a constant key in one of the built-in registries, where the key is either a final
+     * static field or an {@code Identifier} made from string literals, or calling {@code value()} on a final static
+     * {@code Holder}.
+     */
+    private void findRegistryConstantReaders(Set<String> rules) {
+        for (var classNode : scannedClasses()) {
+            for (var methodNode : classNode.methods) {
+                for (var insn : methodNode.instructions) {
+                    if (!(insn instanceof MethodInsnNode methodInsn)) continue;
+
+                    boolean isConstant;
+                    if (methodInsn.name.equals("value") && methodInsn.desc.equals("()Ljava/lang/Object;")) {
+                        isConstant = previousInsn(methodInsn) instanceof FieldInsnNode holderInsn
+                                && holderInsn.getOpcode() == Opcodes.GETSTATIC
+                                && HOLDER_DESCS.contains(holderInsn.desc)
+                                && isFinalField(holderInsn);
+                    } else if (REGISTRY_LOOKUP_METHODS.contains(methodInsn.name)
+                            && methodInsn.getOpcode() == Opcodes.INVOKEINTERFACE
+                            && Type.getArgumentCount(methodInsn.desc) == 1) {
+                        var registryInsn = skipConstantKey(previousInsn(methodInsn));
+                        isConstant = registryInsn instanceof FieldInsnNode fieldInsn
+                                && fieldInsn.getOpcode() == Opcodes.GETSTATIC
+                                && fieldInsn.owner.equals("net/minecraft/core/registries/BuiltInRegistries");
+                    } else {
+                        isConstant = false;
+                    }
+
+                    if (isConstant)
+                        rules.add("registry-constant-reader " + classNode.name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the instruction before the constant key ending at the given instruction, or null if it isn't a constant
+     * key
+     */
+    private AbstractInsnNode skipConstantKey(AbstractInsnNode keyInsn) {
+        if (keyInsn instanceof FieldInsnNode fieldInsn && fieldInsn.getOpcode() == Opcodes.GETSTATIC
+                && CONSTANT_KEY_DESCS.contains(fieldInsn.desc))
+            return isFinalField(fieldInsn) ? previousInsn(fieldInsn) : null;
+
+        if (!(keyInsn instanceof MethodInsnNode factoryInsn)) return null;
+
+        var literals = IdentifierLiterals.find(factoryInsn);
+        return literals != null ? previousInsn(literals.isEmpty() ? factoryInsn : literals.getFirst()) : null;
+    }
+
+    /**
+     * Finds classes making an {@code Identifier} from valid string literals, as determined by
+     * {@link IdentifierLiterals}.
+     */
+    private void findIdentifierLiteralReaders(Set<String> rules) {
+        for (var classNode : scannedClasses()) {
+            for (var methodNode : classNode.methods) {
+                for (var insn : methodNode.instructions) {
+                    if (insn instanceof MethodInsnNode methodInsn && IdentifierLiterals.find(methodInsn) != null)
+                        rules.add("identifier-literal-reader " + classNode.name);
+                }
+            }
+        }
+    }
+
+    private boolean isFinalField(FieldInsnNode fieldInsn) {
+        var declaringClass = resolveFieldOwner(fieldInsn.owner, fieldInsn.name, fieldInsn.desc);
+        return declaringClass != null
+                && (findField(declaringClass, fieldInsn.name, fieldInsn.desc).access & Opcodes.ACC_FINAL) != 0;
+    }
+
+    private static AbstractInsnNode previousInsn(AbstractInsnNode insn) {
+        var previous = insn.getPrevious();
+        while (previous instanceof LineNumberNode)
+            previous = previous.getPrevious();
+        return previous;
+    }
+
+    /**
+     * Finds the {@code $SwitchMap$} arrays javac makes for switches on enums from other classes, reading which enum
+     * constant each switch key stands for from the holder's static initialiser, along with the classes switching on
+     * them.
+     */
+    private void findSwitchMaps(Set<String> rules) {
+        var found = new HashSet<String>();
+        for (var holder : scannedClasses()) {
+            var classInit = holder.methods.stream()
+                    .filter(methodNode -> methodNode.name.equals(ConstantDescs.CLASS_INIT_NAME))
+                    .findFirst()
+                    .orElse(null);
+            if (classInit == null) continue;
+
+            // field -> enum class and key -> constant, from `map[SomeEnum.CONSTANT.ordinal()] = key`
+            var enumClasses = new HashMap<String, String>();
+            var constantsByKey = new HashMap<String, Map<Integer, String>>();
+            var realInsns = new ArrayList<AbstractInsnNode>();
+            for (var insn : classInit.instructions) {
+                if (insn.getOpcode() >= 0)
+                    realInsns.add(insn);
+            }
+            for (int i = 0; i + 4 < realInsns.size(); i++) {
+                if (!(realInsns.get(i) instanceof FieldInsnNode mapInsn
+                        && mapInsn.getOpcode() == Opcodes.GETSTATIC
+                        && mapInsn.owner.equals(holder.name)
+                        && mapInsn.name.startsWith("$SwitchMap$")
+                        && realInsns.get(i + 1) instanceof FieldInsnNode constantInsn
+                        && constantInsn.getOpcode() == Opcodes.GETSTATIC
+                        && realInsns.get(i + 2) instanceof MethodInsnNode ordinalInsn
+                        && ordinalInsn.name.equals("ordinal")
+                        && ordinalInsn.owner.equals(constantInsn.owner)
+                        && realInsns.get(i + 4).getOpcode() == Opcodes.IASTORE))
+                    continue;
+
+                var key = intConstant(realInsns.get(i + 3));
+                if (key == null) continue;
+
+                var previousEnum = enumClasses.putIfAbsent(mapInsn.name, constantInsn.owner);
+                if (previousEnum != null && !previousEnum.equals(constantInsn.owner)) continue;
+                constantsByKey.computeIfAbsent(mapInsn.name, k -> new TreeMap<>()).put(key, constantInsn.name);
+            }
+
+            for (var entry : constantsByKey.entrySet()) {
+                var enumClass = enumClasses.get(entry.getKey());
+                var ordinals = enumOrdinals(enumClass);
+                if (ordinals.isEmpty()) continue;
+
+                var mapping = new ArrayList<String>();
+                for (var keyAndConstant : entry.getValue().entrySet()) {
+                    var ordinal = ordinals.get(keyAndConstant.getValue());
+                    if (ordinal == null) break;
+
+                    mapping.add(keyAndConstant.getKey() + "=" + keyAndConstant.getValue() + ':' + ordinal);
+                }
+                if (mapping.size() != entry.getValue().size()) continue;
+
+                found.add(holder.name + '.' + entry.getKey());
+                rules.add(String.join(" ",
+                        "switch-map", holder.name, entry.getKey(), enumClass, String.join(",", mapping)
+                ));
+            }
+        }
+
+        for (var classNode : scannedClasses()) {
+            readers:
+            for (var methodNode : classNode.methods) {
+                for (var insn : methodNode.instructions) {
+                    if (insn instanceof FieldInsnNode fieldInsn
+                            && fieldInsn.getOpcode() == Opcodes.GETSTATIC
+                            && found.contains(fieldInsn.owner + '.' + fieldInsn.name)
+                            && !(fieldInsn.owner.equals(classNode.name)
+                                    && methodNode.name.equals(ConstantDescs.CLASS_INIT_NAME))) {
+                        rules.add("switch-map-reader " + classNode.name);
+                        break readers;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the ordinal of each constant of the given scanned enum, or an empty map if it isn't one
+     */
+    private Map<String, Integer> enumOrdinals(String enumClass) {
+        var classNode = classes.get(enumClass);
+        if (classNode == null || (classNode.access & Opcodes.ACC_ENUM) == 0) return Map.of();
+
+        // javac declares the constants' fields in declaration order, which is also their ordinal order
+        var ordinals = new HashMap<String, Integer>();
+        for (var fieldNode : classNode.fields) {
+            if ((fieldNode.access & Opcodes.ACC_ENUM) != 0)
+                ordinals.put(fieldNode.name, ordinals.size());
+        }
+        return ordinals;
+    }
+
+    private static Integer intConstant(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5)
+            return opcode - Opcodes.ICONST_0;
+
+        return switch (insn) {
+            case IntInsnNode intInsn when opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH -> intInsn.operand;
+            case LdcInsnNode ldcInsn when ldcInsn.cst instanceof Integer integer -> integer;
+            default -> null;
+        };
+    }
+
+    private String fieldKey(FieldInsnNode fieldInsn) {
+        var declaringClass = resolveFieldOwner(fieldInsn.owner, fieldInsn.name, fieldInsn.desc);
+        var owner = declaringClass != null ? declaringClass.name : fieldInsn.owner;
+        return owner + '.' + fieldInsn.name + ':' + fieldInsn.desc;
+    }
+
+    private static String fieldKey(String owner, FieldNode fieldNode) {
+        return owner + '.' + fieldNode.name + ':' + fieldNode.desc;
+    }
+
+    /**
+     * @return the scanned class that declares the given field, walking up the superclasses of the referenced owner,
+     * or null if it isn't declared by a scanned class
+     */
+    private ClassNode resolveFieldOwner(String owner, String name, String desc) {
+        var classNode = classes.get(owner);
+        while (classNode != null) {
+            if (findField(classNode, name, desc) != null)
+                return classNode;
+
+            classNode = classNode.superName != null ? classes.get(classNode.superName) : null;
+        }
+        return null;
+    }
+
+    private static FieldNode findField(ClassNode classNode, String name, String desc) {
+        for (var fieldNode : classNode.fields) {
+            if (fieldNode.name.equals(name) && fieldNode.desc.equals(desc))
+                return fieldNode;
+        }
+        return null;
+    }
+}
@@ -1,138 +1,678 @@
 package ga.ozli.minecraftmods.anacondy;
 
 import java.lang.invoke.*;
-import java.util.Map;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
 @SuppressWarnings("unused") // called by ldc and invokedynamic
 public final class AnacondyBootstraps {
     private AnacondyBootstraps() {}
 
-    private static final ClassValue<Map<String, CallSite>> VALUES = new ClassValue<>() {
+    /** Invalidated whenever a session field is written, such as on world change or disconnect */
+    private static final InvalidationEpoch SESSION = new InvalidationEpoch();
+
+    /** Invalidated whenever a registry is frozen or unfrozen, or has its tags rebound such as on datapack reload */
+    private static final InvalidationEpoch REGISTRIES = new InvalidationEpoch();
+
+    /** The registries that are currently frozen, as seen by {@link #registryFrozenChanged(Object, boolean)} */
+    private static final Set<Object> FROZEN_REGISTRIES = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>())
+    );
+
+    /** Invalidated once the singleton's constructor has returned */
+    private static final ClassValue<SwitchPoint> SINGLETON_INIT = new ClassValue<>() {
         @Override
-        protected Map<String, CallSite> computeValue(Class<?> type) {
-            return new ConcurrentHashMap<>(4);
+        protected SwitchPoint computeValue(Class<?> type) {
+            return new SwitchPoint();
         }
     };
+
+    /** Invalidated once the built-in registries have been filled in and frozen during {@code Bootstrap.bootStrap()} */
+    private static final SwitchPoint REGISTRIES_BOOTSTRAPPED = new SwitchPoint();
+
     private static final MethodHandle CHECKER_HANDLE;
     private static final MethodHandle AGGRESSIVE_SETTER_HANDLE;
+    private static final MethodHandle RECEIVER_CHECKER_HANDLE;
+    private static final MethodHandle LAMBDA_FOLDER_HANDLE;
+    private static final MethodHandle CONSTANT_CHECKER_HANDLE;
+    private static final MethodHandle FROZEN_CHECKER_HANDLE;
+    private static final MethodHandle INT_CHECKER_HANDLE;
+    private static final MethodHandle LONG_CHECKER_HANDLE;
+    private static final MethodHandle FLOAT_CHECKER_HANDLE;
+    private static final MethodHandle DOUBLE_CHECKER_HANDLE;
+    private static final MethodHandle BOOLEAN_CHECKER_HANDLE;
     static {
         try {
             var lookup = MethodHandles.lookup();
             CHECKER_HANDLE = lookup.findStatic(
                     AnacondyBootstraps.class,
                     "checkAndUpdateGrabber",
-                    MethodType.methodType(Object.class, CallSite.class, MethodHandle.class)
+                    MethodType.methodType(Object.class, CallSiteRegistry.Entry.class, MethodHandle.class)
             );
             AGGRESSIVE_SETTER_HANDLE = lookup.findStatic(
                     AnacondyBootstraps.class,
                     "updateGrabberForSetter",
-                    MethodType.methodType(void.class, CallSite.class, Class.class, MethodHandle.class, Object.class)
+                    MethodType.methodType(void.class, MostlyConstantCallSite.class, MethodHandle.class, Object.class)
+            );
+
+            RECEIVER_CHECKER_HANDLE = lookup.findStatic(
+                    AnacondyBootstraps.class,
+                    "checkAndFoldReceiverField",
+                    MethodType.methodType(
+                            Object.class, MutableCallSite.class, String.class, MethodHandle.class, Object.class
+                    )
+            );
+
+            LAMBDA_FOLDER_HANDLE = lookup.findStatic(
+                    AnacondyBootstraps.class,
+                    "createAndFoldLambda",
+                    MethodType.methodType(
+                            Object.class,
+                            MutableCallSite.class, Class.class, String.class, MethodHandle.class, Object[].class
+                    )
+            );
+
+            CONSTANT_CHECKER_HANDLE = lookup.findStatic(
+                    AnacondyBootstraps.class,
+                    "checkAndFoldConstant",
+                    MethodType.methodType(Object.class, MutableCallSite.class, Class.class, String.class, MethodHandle.class)
+            );
+
+            FROZEN_CHECKER_HANDLE = lookup.findStatic(
+                    AnacondyBootstraps.class,
+                    "isRegistryFrozen",
+                    MethodType.methodType(boolean.class, Object.class)
             );
+
+            INT_CHECKER_HANDLE = findPrimitiveChecker(lookup, int.class);
+            LONG_CHECKER_HANDLE = findPrimitiveChecker(lookup, long.class);
+            FLOAT_CHECKER_HANDLE = findPrimitiveChecker(lookup, float.class);
+            DOUBLE_CHECKER_HANDLE = findPrimitiveChecker(lookup, double.class);
+            BOOLEAN_CHECKER_HANDLE = findPrimitiveChecker(lookup, boolean.class);
         } catch (NoSuchMethodException | IllegalAccessException e) {
             throw new ExceptionInInitializerError(e);
         }
     }
 
+    private static MethodHandle findPrimitiveChecker(MethodHandles.Lookup lookup, Class<?> primitiveType)
+            throws NoSuchMethodException, IllegalAccessException {
+        return lookup.findStatic(
+                AnacondyBootstraps.class,
+                "checkAndUpdateGrabber",
+                MethodType.methodType(
+                        primitiveType, CallSiteRegistry.Entry.class, MethodHandle.class, primitiveType
+                )
+        );
+    }
+
     public static Object invokeNonNull(
             MethodHandles.Lookup lookup, String name, Class<?> type, MethodHandle handle
     ) throws Throwable {
-        return Objects.requireNonNull(handle.invoke(), name);
+        var event = AnacondyEvents.beginResolution();
+        var value = ResolvedConstants.resolve(lookup, name, handle);
+        AnacondyEvents.resolved(event, lookup.lookupClass(), name);
+        return value;
+    }
+
+    public static Object invokeNonNull(
+            MethodHandles.Lookup lookup, String name, Class<?> type, MethodHandle handle, Object arg
+    ) throws Throwable {
+        var event = AnacondyEvents.beginResolution();
+        var value = ResolvedConstants.resolve(lookup, name, handle, arg);
+        AnacondyEvents.resolved(event, lookup.lookupClass(), name);
+        return value;
+    }
+
+    public static Object invokeNonNull(
+            MethodHandles.Lookup lookup, String name, Class<?> type, MethodHandle handle, Object arg0, Object arg1
+    ) throws Throwable {
+        var event = AnacondyEvents.beginResolution();
+        var value = ResolvedConstants.resolve(lookup, name, handle, arg0, arg1);
+        AnacondyEvents.resolved(event, lookup.lookupClass(), name);
+        return value;
     }
 
     public static Object invokeNonNull(
             MethodHandles.Lookup lookup, String name, Class<?> type, MethodHandle handle, Object... args
     ) throws Throwable {
-        return Objects.requireNonNull(handle.invokeWithArguments(args), name);
+        var event = AnacondyEvents.beginResolution();
+        var value = Objects.requireNonNull(handle.invokeWithArguments(args), name);
+        AnacondyEvents.resolved(event, lookup.lookupClass(), name);
+        return value;
+    }
+
+    /**
+     * Checks that the given enum constants still have the ordinals they had when the game was scanned, as mods may
+     * have reordered the enum since. Constants that no longer exist count as a mismatch.
+     * @param expectedOrdinals comma-separated {@code CONSTANT:ordinal} pairs
+     * @see ga.ozli.minecraftmods.anacondy.transformer.SwitchMapTransformer
+     */
+    public static boolean enumOrdinalsMatch(
+            MethodHandles.Lookup lookup, String name, Class<?> type, Class<?> enumClass, String expectedOrdinals
+    ) {
+        var constants = enumClass.getEnumConstants();
+        if (constants == null) return false;
+
+        for (var pair : expectedOrdinals.split(",")) {
+            int colon = pair.lastIndexOf(':');
+            var constantName = pair.substring(0, colon);
+            int ordinal = Integer.parseInt(pair.substring(colon + 1));
+            if (ordinal >= constants.length || !((Enum<?>) constants[ordinal]).name().equals(constantName))
+                return false;
+        }
+        return true;
     }
 
     /** @see ga.ozli.minecraftmods.anacondy.transformer.StaticFieldGetToIndy.ConstantOnceNonNull */
     public static CallSite constantFoldWhenNonNull(
             MethodHandles.Lookup lookup, String name, MethodType methodType, Class<?> owner, MethodHandle fieldGetter
     ) throws Throwable {
+        var registry = CallSiteRegistry.of(owner);
+
         // Check if another `GETSTATIC` of the same field has already got a non-null value
-        var grabber = VALUES.get(owner).get(name);
-        if (grabber instanceof ConstantCallSite)
-            return grabber; // already has, so share its constant call site with this one
+        var entry = registry.get(name, methodType.returnType());
+        if (entry != null && entry.isConstant()) {
+            // already has, so share its constant call site with this one
+            AnacondyEvents.linked(owner, name, "constantFoldWhenNonNull", true);
+            return entry.site();
+        }
 
         // Get the current value of the field. If it's non-null, we can make it eligible for constant folding
         var value = fieldGetter.invoke();
         if (value != null) {
-            var constant = MethodHandles.constant(methodType.returnType(), value);
-            if (grabber instanceof MutableCallSite mutableGrabber) {
-                // If there's an existing getter, update it to the constant
-                mutableGrabber.setTarget(constant);
-            } else {
-                // Otherwise, update the value map to use a ConstantCallSite for future accesses of this field
-                grabber = new ConstantCallSite(constant);
-                VALUES.get(owner).put(name, grabber);
+            if (entry == null) {
+                // No existing getter, so register a ConstantCallSite for future accesses of this field
+                var constant = new ConstantCallSite(MethodHandles.constant(methodType.returnType(), value));
+                entry = registry.putIfAbsent(name, methodType.returnType(), constant);
             }
 
-            return grabber;
+            // If there's an existing getter, this updates it to the constant
+            AnacondyEvents.linked(owner, name, "constantFoldWhenNonNull", true);
+            return entry.makeConstant(value);
         }
 
         // The field is still null, so make this field access intercepted by
-        // AnacondyBootstraps#checkAndUpdateGrabber(CallSite, MethodHandle)
-        if (grabber == null)
-            grabber = new MutableCallSite(methodType);
+        // AnacondyBootstraps#checkAndUpdateGrabber(CallSiteRegistry.Entry, MethodHandle)
+        if (entry == null) {
+            var grabber = new MutableCallSite(methodType);
+            entry = registry.newEntry(name, methodType.returnType(), grabber);
 
-        // Curry the grabber and fieldGetter into the checker
-        var checker = MethodHandles.insertArguments(CHECKER_HANDLE, 0, grabber, fieldGetter).asType(methodType);
+            // Curry the entry and fieldGetter into the checker
+            grabber.setTarget(MethodHandles.insertArguments(CHECKER_HANDLE, 0, entry, fieldGetter).asType(methodType));
+            entry = registry.putIfAbsent(entry);
+        }
 
-        grabber.setTarget(checker);
-        VALUES.get(owner).put(name, grabber);
-        return grabber;
+        AnacondyEvents.linked(owner, name, "constantFoldWhenNonNull", entry.isConstant());
+        return entry.site();
     }
 
     /**
      * Intercepts a field get to check if the field is now non-null, and if so, stops intercepting and updates the
      * grabber to point to a constant value
      */
-    private static Object checkAndUpdateGrabber(CallSite grabber, MethodHandle fieldGetter) throws Throwable {
+    private static Object checkAndUpdateGrabber(CallSiteRegistry.Entry entry, MethodHandle fieldGetter) throws Throwable {
         var value = fieldGetter.invoke();
         if (value != null)
-            grabber.setTarget(MethodHandles.constant(grabber.type().returnType(), value));
+            entry.makeConstant(value);
+
+        return value;
+    }
+
+    /** @see ga.ozli.minecraftmods.anacondy.transformer.StaticFieldGetToIndy.ConstantOnceNonDefault */
+    public static CallSite constantFoldWhenNonDefault(
+            MethodHandles.Lookup lookup, String name, MethodType methodType, Class<?> owner, MethodHandle fieldGetter
+    ) throws Throwable {
+        return constantFoldWhenNonDefault(lookup, name, methodType, owner, fieldGetter, 0);
+    }
+
+    /**
+     * Primitive equivalent of {@link #constantFoldWhenNonNull(MethodHandles.Lookup, String, MethodType, Class, MethodHandle)},
+     * using the given sentinel rather than null to mean the field isn't ready yet.
+     * @param notReady the value of the field before it's been initialised. Booleans may be given as an int (0 or 1).
+     * @see ga.ozli.minecraftmods.anacondy.transformer.StaticFieldGetToIndy.ConstantOnceNonDefault
+     */
+    public static CallSite constantFoldWhenNonDefault(
+            MethodHandles.Lookup lookup, String name, MethodType methodType, Class<?> owner, MethodHandle fieldGetter,
+            Object notReady
+    ) throws Throwable {
+        var fieldType = methodType.returnType();
+        var checker = switch (fieldType.descriptorString()) {
+            case "I" -> INT_CHECKER_HANDLE;
+            case "J" -> LONG_CHECKER_HANDLE;
+            case "F" -> FLOAT_CHECKER_HANDLE;
+            case "D" -> DOUBLE_CHECKER_HANDLE;
+            case "Z" -> BOOLEAN_CHECKER_HANDLE;
+            default -> throw new IllegalArgumentException("Unsupported field type " + fieldType + " for " + name);
+        };
+        notReady = switch (notReady) {
+            case Boolean b when fieldType == boolean.class -> b;
+            case Number n when fieldType == boolean.class -> n.intValue() != 0;
+            case Number n when fieldType == int.class -> n.intValue();
+            case Number n when fieldType == long.class -> n.longValue();
+            case Number n when fieldType == float.class -> n.floatValue();
+            case Number n when fieldType == double.class -> n.doubleValue();
+            default -> throw new IllegalArgumentException("Invalid sentinel " + notReady + " for " + name);
+        };
+
+        var registry = CallSiteRegistry.of(owner);
+
+        // Check if another `GETSTATIC` of the same field has already got a non-default value
+        var entry = registry.get(name, fieldType);
+        if (entry != null && entry.isConstant()) {
+            AnacondyEvents.linked(owner, name, "constantFoldWhenNonDefault", true);
+            return entry.site();
+        }
+
+        // Boxing here is fine as it only happens once per linkage, the checker itself never boxes
+        var value = fieldGetter.invoke();
+        if (!notReady.equals(value)) {
+            if (entry == null)
+                entry = registry.putIfAbsent(name, fieldType, new ConstantCallSite(MethodHandles.constant(fieldType, value)));
+
+            AnacondyEvents.linked(owner, name, "constantFoldWhenNonDefault", true);
+            return entry.makeConstant(value);
+        }
+
+        if (entry == null) {
+            var grabber = new MutableCallSite(methodType);
+            entry = registry.newEntry(name, fieldType, grabber);
+            grabber.setTarget(MethodHandles.insertArguments(checker, 0, entry, fieldGetter, notReady));
+            entry = registry.putIfAbsent(entry);
+        }
+
+        AnacondyEvents.linked(owner, name, "constantFoldWhenNonDefault", entry.isConstant());
+        return entry.site();
+    }
+
+    //region Primitive checkers
+    // Specialised per type so that the field value never needs boxing until it's ready to be made constant
+    private static int checkAndUpdateGrabber(CallSiteRegistry.Entry entry, MethodHandle fieldGetter, int notReady)
+            throws Throwable {
+        var value = (int) fieldGetter.invokeExact();
+        if (value != notReady)
+            entry.makeConstant(value);
+
+        return value;
+    }
+
+    private static long checkAndUpdateGrabber(CallSiteRegistry.Entry entry, MethodHandle fieldGetter, long notReady)
+            throws Throwable {
+        var value = (long) fieldGetter.invokeExact();
+        if (value != notReady)
+            entry.makeConstant(value);
+
+        return value;
+    }
+
+    private static float checkAndUpdateGrabber(CallSiteRegistry.Entry entry, MethodHandle fieldGetter, float notReady)
+            throws Throwable {
+        var value = (float) fieldGetter.invokeExact();
+        // compare bits to match Float#equals, which is used at link time
+        if (Float.floatToIntBits(value) != Float.floatToIntBits(notReady))
+            entry.makeConstant(value);
+
+        return value;
+    }
+
+    private static double checkAndUpdateGrabber(CallSiteRegistry.Entry entry, MethodHandle fieldGetter, double notReady)
+            throws Throwable {
+        var value = (double) fieldGetter.invokeExact();
+        if (Double.doubleToLongBits(value) != Double.doubleToLongBits(notReady))
+            entry.makeConstant(value);
+
+        return value;
+    }
+
+    private static boolean checkAndUpdateGrabber(CallSiteRegistry.Entry entry, MethodHandle fieldGetter, boolean notReady)
+            throws Throwable {
+        var value = (boolean) fieldGetter.invokeExact();
+        if (value != notReady)
+            entry.makeConstant(value);
+
+        return value;
+    }
+    //endregion
+
+    /**
+     * Links an instance field get on a singleton that's deferred until the singleton's constructor has returned.
+     * Until then, every read goes straight to the field, regardless of which thread it's on. Afterwards, this behaves
+     * like {@link #foldWhenNonNull(MethodHandles.Lookup, String, MethodType, MethodHandle)}. The receiver is expected to always be the same
+     * singleton instance.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.SingletonInitTracker
+     */
+    public static CallSite foldAfterSingletonInit(
+            MethodHandles.Lookup lookup, String name, MethodType methodType, MethodHandle fieldGetter
+    ) {
+        var owner = methodType.parameterType(0);
+        var site = new MutableCallSite(methodType);
+        var checker = MethodHandles.insertArguments(RECEIVER_CHECKER_HANDLE, 0, site, name, fieldGetter).asType(methodType);
+
+        // Once initialised, the guard permanently falls through to the checker
+        site.setTarget(SINGLETON_INIT.get(owner).guardWithTest(fieldGetter.asType(methodType), checker));
+
+        AnacondyEvents.linked(owner, name, "foldAfterSingletonInit", false);
+        return site;
+    }
+
+    /**
+     * Links an instance field get on a singleton that folds to a constant on the first non-null read (or non-default
+     * read for primitives), with earlier reads falling through to the live field. The receiver is expected to always
+     * be the same singleton instance.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.SingletonAccessedFieldsTransformer
+     */
+    public static CallSite foldWhenNonNull(
+            MethodHandles.Lookup lookup, String name, MethodType methodType, MethodHandle fieldGetter
+    ) {
+        var site = new MutableCallSite(methodType);
+        site.setTarget(MethodHandles.insertArguments(RECEIVER_CHECKER_HANDLE, 0, site, name, fieldGetter).asType(methodType));
+
+        AnacondyEvents.linked(methodType.parameterType(0), name, "foldWhenNonNull", false);
+        return site;
+    }
+
+    /**
+     * Reads a singleton's field and, if it's non-null/non-default, retargets the call site to a constant of it that
+     * ignores the receiver. Primitive fields are boxed here, but only until the site is folded.
+     */
+    private static Object checkAndFoldReceiverField(
+            MutableCallSite site, String name, MethodHandle fieldGetter, Object receiver
+    ) throws Throwable {
+        var value = fieldGetter.invoke(receiver);
+        if (!isNullOrDefault(value)) {
+            var type = site.type();
+            site.setTarget(MethodHandles.dropArguments(
+                    MethodHandles.constant(type.returnType(), value), 0, type.parameterType(0)
+            ));
+            AnacondyEvents.retargeted(type.parameterType(0), name, "constant");
+        }
 
         return value;
     }
 
+    /**
+     * Links a lambda or method reference that only captures singletons, creating it through the
+     * {@link LambdaMetafactory} on the first evaluation where everything captured is non-null and folding every later
+     * evaluation to that same instance. As each captured value is the only instance of its class, the lambda would
+     * capture the same values every time.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.SingletonLambdaTransformer
+     */
+    public static CallSite foldSingletonLambda(
+            MethodHandles.Lookup lookup,
+            String name,
+            MethodType methodType,
+            MethodType samMethodType,
+            MethodHandle implMethod,
+            MethodType instantiatedMethodType
+    ) throws LambdaConversionException {
+        var factory = LambdaMetafactory.metafactory(
+                lookup, name, methodType, samMethodType, implMethod, instantiatedMethodType
+        ).dynamicInvoker();
+
+        var site = new MutableCallSite(methodType);
+        site.setTarget(MethodHandles.insertArguments(LAMBDA_FOLDER_HANDLE, 0, site, lookup.lookupClass(), name, factory)
+                .asCollector(Object[].class, methodType.parameterCount())
+                .asType(methodType));
+
+        AnacondyEvents.linked(lookup.lookupClass(), name, "foldSingletonLambda", false);
+        return site;
+    }
+
+    private static Object createAndFoldLambda(
+            MutableCallSite site, Class<?> owner, String name, MethodHandle factory, Object[] captured
+    ) throws Throwable {
+        var lambda = factory.invokeWithArguments(captured);
+        for (var value : captured) {
+            if (value == null) return lambda;
+        }
+
+        var type = site.type();
+        site.setTarget(MethodHandles.dropArguments(
+                MethodHandles.constant(type.returnType(), lambda), 0, type.parameterList()
+        ));
+        AnacondyEvents.retargeted(owner, name, "constant");
+        return lambda;
+    }
+
+    /**
+     * Links a getter called on a static final field, such as {@code Blocks.AIR.defaultBlockState()}, that's deferred
+     * until the game's registries have been bootstrapped. Until then, every call goes through as usual. Afterwards, the
+     * call site folds to a constant on the first non-null result.
+     * @param holderGetter the static getter of the field the getter is called on
+     * @param getter the getter itself, taking the field's value
+     * @see ga.ozli.minecraftmods.anacondy.transformer.DefaultStateTransformer
+     */
+    public static CallSite foldAfterBootstrap(
+            MethodHandles.Lookup lookup, String name, MethodType methodType, MethodHandle holderGetter, MethodHandle getter
+    ) {
+        var owner = lookup.lookupClass();
+        var value = MethodHandles.filterReturnValue(holderGetter, getter).asType(methodType);
+        var site = new MutableCallSite(methodType);
+        var checker = MethodHandles.insertArguments(CONSTANT_CHECKER_HANDLE, 0, site, owner, name, value).asType(methodType);
+
+        // Once bootstrapped, the guard permanently falls through to the checker
+        site.setTarget(REGISTRIES_BOOTSTRAPPED.guardWithTest(value, checker));
+
+        AnacondyEvents.linked(owner, name, "foldAfterBootstrap", false);
+        return site;
+    }
+
+    /**
+     * Called once the built-in registries have been bootstrapped, allowing {@link #foldAfterBootstrap} call sites to
+     * start folding.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.BootstrapTracker
+     */
+    public static void registriesBootstrapped() {
+        if (!REGISTRIES_BOOTSTRAPPED.hasBeenInvalidated())
+            SwitchPoint.invalidateAll(new SwitchPoint[] {REGISTRIES_BOOTSTRAPPED});
+    }
+
+    private static Object checkAndFoldConstant(MutableCallSite site, Class<?> owner, String name, MethodHandle getter)
+            throws Throwable {
+        var value = getter.invoke();
+        if (value != null) {
+            site.setTarget(MethodHandles.constant(site.type().returnType(), value));
+            AnacondyEvents.retargeted(owner, name, "constant");
+        }
+
+        return value;
+    }
+
+    /**
+     * Links a lookup of a constant key in a registry held in a static field, such as
+     * {@code BuiltInRegistries.BLOCK.getValue(Identifier.withDefaultNamespace("stone"))}. The lookup goes through as
+     * usual until the registry is frozen, then folds to a constant until the registry is unfrozen or has its tags
+     * rebound.
+     * @param registryGetter the static getter of the registry
+     * @param lookupMethod the registry method to call, taking the registry and the key
+     * @param key the key to look up, or the getter of the static field holding it, in which case the lookup is only
+     *            folded if the field is final
+     * @see ga.ozli.minecraftmods.anacondy.transformer.RegistryConstantTransformer
+     */
+    public static CallSite registryConstant(
+            MethodHandles.Lookup lookup, String name, MethodType methodType, MethodHandle registryGetter,
+            MethodHandle lookupMethod, Object key
+    ) throws Throwable {
+        registryGetter = registryGetter.asType(MethodType.methodType(lookupMethod.type().parameterType(0)));
+        if (key instanceof MethodHandle keyGetter) {
+            if (!isFinalField(lookup, keyGetter)) {
+                AnacondyEvents.linked(lookup.lookupClass(), name, "registryConstant", false);
+                // `registry.lookup(KEY)`, read live on every call as before
+                var keyType = lookupMethod.type().parameterType(1);
+                var withRegistry = MethodHandles.collectArguments(lookupMethod, 0, registryGetter);
+                return new ConstantCallSite(MethodHandles.collectArguments(
+                        withRegistry, 0, keyGetter.asType(MethodType.methodType(keyType))
+                ).asType(methodType));
+            }
+            key = keyGetter.invoke();
+        }
+
+        var live = MethodHandles.collectArguments(
+                MethodHandles.insertArguments(lookupMethod, 1, key), 0, registryGetter
+        );
+        var readyCheck = MethodHandles.filterReturnValue(
+                registryGetter.asType(registryGetter.type().changeReturnType(Object.class)), FROZEN_CHECKER_HANDLE
+        );
+
+        AnacondyEvents.linked(lookup.lookupClass(), name, "registryConstant", false);
+        return new EpochCallSite(REGISTRIES, lookup.lookupClass(), name, methodType, live, readyCheck);
+    }
+
+    /**
+     * Links {@code value()} on a {@code Holder} held in a static field, such as {@code MobEffects.SPEED.value()}. The
+     * call goes through as usual until it's first made with the holder bound, which for the built-in registries is
+     * from their bootstrap onwards, or failing that the next time any registry is frozen, unfrozen or has its tags
+     * rebound. It then folds to a constant until the next such change.
+     * @param holderGetter the static getter of the holder
+     * @param valueGetter the holder's {@code value()} method
+     * @see ga.ozli.minecraftmods.anacondy.transformer.RegistryConstantTransformer
+     */
+    public static CallSite holderValueConstant(
+            MethodHandles.Lookup lookup, String name, MethodType methodType, MethodHandle holderGetter,
+            MethodHandle valueGetter
+    ) throws ReflectiveOperationException {
+        var holderType = holderGetter.type().returnType();
+        valueGetter = valueGetter.asType(valueGetter.type().changeParameterType(0, holderType));
+        var readyCheck = MethodHandles.filterReturnValue(
+                holderGetter,
+                lookup.findVirtual(holderType, "isBound", MethodType.methodType(boolean.class))
+        );
+
+        AnacondyEvents.linked(lookup.lookupClass(), name, "holderValueConstant", false);
+        return new EpochCallSite(
+                REGISTRIES, lookup.lookupClass(), name, methodType,
+                MethodHandles.filterReturnValue(holderGetter, valueGetter), readyCheck
+        );
+    }
+
+    /**
+     * Called at the end of a registry's {@code freeze()} or {@code unfreeze()}, relinking all registry constants on
+     * their next access.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.RegistryFreezeTracker
+     */
+    public static void registryFrozenChanged(Object registry, boolean frozen) {
+        if (frozen) {
+            FROZEN_REGISTRIES.add(registry);
+        } else {
+            FROZEN_REGISTRIES.remove(registry);
+        }
+        REGISTRIES.invalidate();
+    }
+
+    /**
+     * Called after a registry's tags are rebound, such as on datapack reload, relinking all registry constants on
+     * their next access.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.RegistryConstantTransformer
+     */
+    public static void invalidateRegistryConstants() {
+        REGISTRIES.invalidate();
+    }
+
+    private static boolean isRegistryFrozen(Object registry) {
+        return FROZEN_REGISTRIES.contains(registry);
+    }
+
+    /**
+     * @return whether the given static field getter reads a final field, or false if that can't be told
+     */
+    private static boolean isFinalField(MethodHandles.Lookup lookup, MethodHandle fieldGetter) {
+        try {
+            var field = lookup.revealDirect(fieldGetter).reflectAs(Field.class, lookup);
+            return Modifier.isFinal(field.getModifiers());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean isNullOrDefault(Object value) {
+        return switch (value) {
+            case null -> true;
+            case Boolean b -> !b;
+            case Character c -> c == '\0';
+            case Float f -> Float.floatToRawIntBits(f) == 0;
+            case Double d -> Double.doubleToRawLongBits(d) == 0L;
+            case Number n when n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte ->
+                    n.longValue() == 0L;
+            default -> false;
+        };
+    }
+
+    /**
+     * Called at the end of a singleton's constructor, allowing its deferred field gets to start folding.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.SingletonInitTracker
+     */
+    public static void singletonInitialised(Class<?> owner) {
+        var switchPoint = SINGLETON_INIT.get(owner);
+        if (!switchPoint.hasBeenInvalidated())
+            SwitchPoint.invalidateAll(new SwitchPoint[] {switchPoint});
+    }
+
+    /**
+     * Links a field get that's constant for the duration of a session, such as {@code Minecraft.level}. The receiver
+     * is expected to always be the same singleton instance.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.SessionConstantTransformer
+     */
+    public static CallSite sessionConstant(
+            MethodHandles.Lookup lookup, String name, MethodType methodType, MethodHandle fieldGetter
+    ) {
+        AnacondyEvents.linked(methodType.parameterType(0), name, "sessionConstant", false);
+        return new EpochCallSite(SESSION, methodType.parameterType(0), name, methodType, fieldGetter);
+    }
+
+    /**
+     * Called after every write to a session field, relinking all session constants on their next access.
+     * @see ga.ozli.minecraftmods.anacondy.transformer.SessionConstantTransformer
+     */
+    public static void invalidateSessionConstants() {
+        SESSION.invalidate();
+    }
+
     /** @see ga.ozli.minecraftmods.anacondy.transformer.StaticFieldGetToIndy.MostlyConstant */
     public static CallSite mostlyConstantFieldGetter(
         MethodHandles.Lookup lookup, String name, MethodType methodType, Class<?> owner, MethodHandle getterHandle
     ) {
-        var knownFieldsInClass = VALUES.get(owner);
+        var registry = CallSiteRegistry.of(owner);
 
-        // first try the fast-path that avoids an allocating lambda
-        var grabber = knownFieldsInClass.get(name);
-        if (grabber != null)
-            return grabber;
+        var entry = registry.get(name, methodType.returnType());
+        if (entry == null) {
+            var grabber = new MostlyConstantCallSite(owner, name, getterHandle);
+            entry = registry.putIfAbsent(name, methodType.returnType(), grabber);
+        }
 
-        // otherwise create a new MutableCallSite for this field if necessary
-        return knownFieldsInClass.computeIfAbsent(name, k -> new MutableCallSite(getterHandle));
+        AnacondyEvents.linked(owner, name, "mostlyConstantFieldGetter", false);
+        return entry.site();
     }
 
     /** @see ga.ozli.minecraftmods.anacondy.transformer.StaticFieldGetToIndy.MostlyConstant */
     public static CallSite mostlyConstantFieldSetter(
         MethodHandles.Lookup lookup, String name, MethodType methodType, Class<?> owner, MethodHandle setterHandle
-    ) {
-        var knownFieldsInClass = VALUES.get(owner);
+    ) throws ReflectiveOperationException {
+        var fieldType = methodType.parameterType(0);
+        var registry = CallSiteRegistry.of(owner);
+
+        var entry = registry.get(name, fieldType);
+        if (entry == null) {
+            // No getter has been linked yet, so look up the plain getter it would have been given ourselves
+            var grabber = new MostlyConstantCallSite(owner, name, lookup.findStaticGetter(owner, name, fieldType));
+            entry = registry.putIfAbsent(name, fieldType, grabber);
+        }
 
-        var grabber = knownFieldsInClass.get(name);
-        if (grabber == null)
-            grabber = knownFieldsInClass.computeIfAbsent(name, k -> new MutableCallSite(methodType));
+        var grabber = (MostlyConstantCallSite) entry.site();
+        var trackingSetter = MethodHandles.insertArguments(AGGRESSIVE_SETTER_HANDLE, 0, grabber, setterHandle)
+                .asType(methodType);
 
-        var setterTarget = MethodHandles.insertArguments(
-                AGGRESSIVE_SETTER_HANDLE,
-                0, grabber, methodType.parameterType(0), setterHandle
-        ).asType(methodType);
+        AnacondyEvents.linked(owner, name, "mostlyConstantFieldSetter", false);
 
-        return new ConstantCallSite(setterTarget.asType(methodType));
+        // Once the grabber is demoted for exceeding its write budget, this falls back to a plain field set
+        return new ConstantCallSite(grabber.guardSetter(trackingSetter, setterHandle.asType(methodType)));
     }
 
-    private static void updateGrabberForSetter(CallSite grabber, Class<?> returnType, MethodHandle setter, Object value)
+    private static void updateGrabberForSetter(MostlyConstantCallSite grabber, MethodHandle setter, Object value)
             throws Throwable {
         setter.invoke(value);
-        grabber.setTarget(MethodHandles.constant(returnType, value));
+        grabber.onWrite(value);
     }
 }
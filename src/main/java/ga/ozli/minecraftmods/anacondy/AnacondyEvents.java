@@ -0,0 +1,108 @@
+package ga.ozli.minecraftmods.anacondy;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events emitted by {@link AnacondyBootstraps}, for correlating startup stalls and deoptimisations
+ * with specific folded fields.
+ * <p>A matching {@code anacondy.jfc} profile is bundled in the root of the jar, which can be extracted and layered on
+ * top of the default profile with {@code -XX:StartFlightRecording:settings=default,settings=anacondy.jfc}.</p>
+ */
+final class AnacondyEvents {
+    private AnacondyEvents() {}
+
+    private static final String CATEGORY = "Anacondy";
+
+    @Name("anacondy.ConstantResolution")
+    @Label("Constant Resolution")
+    @Category(CATEGORY)
+    @Description("Resolution of a ConstantDynamic by one of Anacondy's bootstraps")
+    @StackTrace(false)
+    static final class ConstantResolution extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Owner")
+        @Description("The class whose constant pool the ConstantDynamic belongs to")
+        Class<?> owner;
+    }
+
+    @Name("anacondy.CallSiteLinkage")
+    @Label("Call Site Linkage")
+    @Category(CATEGORY)
+    @Description("Linkage of an invokedynamic by one of Anacondy's bootstraps")
+    @StackTrace(false)
+    static final class CallSiteLinkage extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Owner")
+        @Description("The class declaring the field being accessed")
+        Class<?> owner;
+
+        @Label("Strategy")
+        @Description("The bootstrap method used to link the call site")
+        String strategy;
+
+        @Label("Constant")
+        @Description("Whether the call site was linked straight to a constant")
+        boolean constant;
+    }
+
+    @Name("anacondy.CallSiteRetarget")
+    @Label("Call Site Retarget")
+    @Category(CATEGORY)
+    @Description("A MutableCallSite managed by Anacondy being pointed at a new target, invalidating dependent JIT code")
+    static final class CallSiteRetarget extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Owner")
+        @Description("The class declaring the field being accessed")
+        Class<?> owner;
+
+        @Label("Target")
+        @Description("What the call site now points to")
+        String target;
+    }
+
+    static ConstantResolution beginResolution() {
+        var event = new ConstantResolution();
+        event.begin();
+        return event;
+    }
+
+    static void resolved(ConstantResolution event, Class<?> owner, String name) {
+        if (event.shouldCommit()) {
+            event.owner = owner;
+            event.name = name;
+            event.commit();
+        }
+    }
+
+    static void linked(Class<?> owner, String name, String strategy, boolean constant) {
+        var event = new CallSiteLinkage();
+        if (event.shouldCommit()) {
+            event.owner = owner;
+            event.name = name;
+            event.strategy = strategy;
+            event.constant = constant;
+            event.commit();
+        }
+    }
+
+    static void retargeted(Class<?> owner, String name, String target) {
+        var event = new CallSiteRetarget();
+        if (event.shouldCommit()) {
+            event.owner = owner;
+            event.name = name;
+            event.target = target;
+            event.commit();
+        }
+    }
+}
@@ -16,7 +16,9 @@ public record AnacondyTransformersProvider(String name) implements ITransformati
     }
 
     @Override
-    public void initialize(IEnvironment environment) {}
+    public void initialize(IEnvironment environment) {
+        DeoptimizationMonitor.startIfEnabled();
+    }
 
     @Override
     public void onLoad(IEnvironment env, Set<String> otherServices) {}
@@ -0,0 +1,146 @@
+package ga.ozli.minecraftmods.anacondy;
+
+import org.jspecify.annotations.Nullable;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Per-owner registry of the call sites Anacondy's bootstraps share between every {@code GETSTATIC}/{@code PUTSTATIC}
+ * of the same field, keyed by the field's name and type so that same-named fields with different descriptors don't
+ * collide.
+ * <p>Owners typically only have a handful of intercepted fields, so entries are kept in a small copy-on-write array
+ * that is scanned linearly rather than hashed, keeping lookups during bootstrap storms allocation-free.</p>
+ */
+final class CallSiteRegistry {
+    private static final ClassValue<CallSiteRegistry> REGISTRIES = new ClassValue<>() {
+        @Override
+        protected CallSiteRegistry computeValue(Class<?> type) {
+            return new CallSiteRegistry(type);
+        }
+    };
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+    private static final VarHandle ENTRIES;
+    static {
+        try {
+            ENTRIES = MethodHandles.lookup().findVarHandle(CallSiteRegistry.class, "entries", Entry[].class);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Class<?> owner;
+    @SuppressWarnings("FieldMayBeFinal") // updated via the ENTRIES VarHandle
+    private volatile Entry[] entries = NO_ENTRIES;
+
+    private CallSiteRegistry(Class<?> owner) {
+        this.owner = owner;
+    }
+
+    static CallSiteRegistry of(Class<?> owner) {
+        return REGISTRIES.get(owner);
+    }
+
+    /**
+     * @return the entry for the given field, or null if no bootstrap has registered a call site for it yet
+     */
+    @Nullable Entry get(String name, Class<?> type) {
+        for (var entry : entries) {
+            if (entry.matches(name, type))
+                return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Registers the given call site for the field unless another thread beat us to it, in which case the existing
+     * entry is returned instead.
+     */
+    Entry putIfAbsent(String name, Class<?> type, CallSite site) {
+        return putIfAbsent(newEntry(name, type, site));
+    }
+
+    /**
+     * Creates an entry that isn't visible to other lookups until passed to {@link #putIfAbsent(Entry)}, allowing its
+     * site's target to be set up with the entry curried in before it is published.
+     */
+    Entry newEntry(String name, Class<?> type, CallSite site) {
+        return new Entry(owner, name, type, site);
+    }
+
+    Entry putIfAbsent(Entry created) {
+        while (true) {
+            var current = entries;
+            for (var entry : current) {
+                if (entry.matches(created.name, created.type))
+                    return entry;
+            }
+
+            var updated = new Entry[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = created;
+            if (ENTRIES.compareAndSet(this, current, updated))
+                return created;
+        }
+    }
+
+    /**
+     * A field's shared call site. Once the field is known to be permanently constant, the entry swaps its site for a
+     * {@link ConstantCallSite} so that the mutable site and anything curried into its old target can be collected.
+     */
+    static final class Entry {
+        private final Class<?> owner;
+        private final String name;
+        private final Class<?> type;
+        private volatile CallSite site;
+
+        private Entry(Class<?> owner, String name, Class<?> type, CallSite site) {
+            this.owner = owner;
+            this.name = name;
+            this.type = type;
+            this.site = site;
+        }
+
+        private boolean matches(String name, Class<?> type) {
+            return this.type == type && this.name.equals(name);
+        }
+
+        Class<?> owner() {
+            return owner;
+        }
+
+        String name() {
+            return name;
+        }
+
+        CallSite site() {
+            return site;
+        }
+
+        boolean isConstant() {
+            return site instanceof ConstantCallSite;
+        }
+
+        /**
+         * Permanently points every call site linked to this entry at the given value.
+         * @return the now constant call site to hand out to future linkages of this field
+         */
+        CallSite makeConstant(@Nullable Object value) {
+            var current = site;
+            if (current instanceof ConstantCallSite)
+                return current;
+
+            MethodHandle constant = MethodHandles.constant(type, value);
+            current.setTarget(constant);
+
+            var constantSite = new ConstantCallSite(constant);
+            site = constantSite;
+            AnacondyEvents.retargeted(owner, name, "constant");
+            return constantSite;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ga.ozli.minecraftmods.anacondy;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordingStream;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in in-process JFR monitor that attributes JIT deoptimisations back to the Anacondy rules that rewrote the method
+ * they happened in, to help find rules that fold fields which turn out not to be constant.
+ * <p>Enabled with {@code -Danacondy.deoptMonitor=true}. A per-rule report of deopt counts and affected methods is
+ * written to {@code anacondy-deopt-report.txt} in the working directory (overridable with
+ * {@code -Danacondy.deoptMonitor.report=path}) on shutdown.</p>
+ */
+public final class DeoptimizationMonitor {
+    private DeoptimizationMonitor() {}
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeoptimizationMonitor.class);
+
+    private static final boolean ENABLED = Boolean.getBoolean("anacondy.deoptMonitor");
+
+    /** Rewritten method ("owner.nameDesc") -> the rules that rewrote it */
+    private static final Map<String, Set<String>> REWRITTEN_METHODS = new ConcurrentHashMap<>();
+
+    /** Rule -> affected method -> deopt count */
+    private static final Map<String, Map<String, LongAdder>> DEOPTS_BY_RULE = new ConcurrentHashMap<>();
+
+    /**
+     * Records that the given rule rewrote a method, making deopts inside it attributable to the rule.
+     * No-op unless the monitor is enabled.
+     * @param owner the internal name of the class declaring the method
+     */
+    public static void recordRewrite(String rule, String owner, String methodName, String methodDesc) {
+        if (!ENABLED) return;
+
+        REWRITTEN_METHODS
+                .computeIfAbsent(owner + '.' + methodName + methodDesc, k -> ConcurrentHashMap.newKeySet())
+                .add(rule);
+    }
+
+    public static void startIfEnabled() {
+        if (!ENABLED) return;
+
+        RecordingStream stream;
+        try {
+            stream = new RecordingStream();
+        } catch (IllegalStateException | SecurityException e) {
+            LOGGER.warn("Unable to start the deoptimisation monitor as JFR is unavailable", e);
+            return;
+        }
+
+        stream.enable("jdk.Deoptimization").withStackTrace();
+        stream.onEvent("jdk.Deoptimization", DeoptimizationMonitor::onDeoptimization);
+        stream.startAsync();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stream.close();
+            writeReport(Path.of(System.getProperty("anacondy.deoptMonitor.report", "anacondy-deopt-report.txt")));
+        }, "Anacondy deopt report"));
+
+        LOGGER.info("Anacondy deoptimisation monitor started");
+    }
+
+    private static void onDeoptimization(RecordedEvent event) {
+        // The deopt may have happened inside a rewritten method that was inlined, so check the inlined frames up to and
+        // including the compiled method that was deoptimised. Callers past that weren't affected by it.
+        var method = findRewrittenMethod(event.getValue("method"));
+        if (method == null && event.getStackTrace() != null) {
+            for (var frame : event.getStackTrace().getFrames()) {
+                method = findRewrittenMethod(frame.getMethod());
+                if (method != null || !"Inlined".equals(frame.getType())) break;
+            }
+        }
+        if (method == null) return;
+
+        for (var rule : REWRITTEN_METHODS.get(method)) {
+            DEOPTS_BY_RULE
+                    .computeIfAbsent(rule, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(method, k -> new LongAdder())
+                    .increment();
+        }
+    }
+
+    private static @Nullable String findRewrittenMethod(@Nullable RecordedMethod method) {
+        if (method == null) return null;
+
+        var key = method.getType().getName().replace('.', '/') + '.' + method.getName() + method.getDescriptor();
+        return REWRITTEN_METHODS.containsKey(key) ? key : null;
+    }
+
+    private static void writeReport(Path path) {
+        var rules = new ArrayList<>(DEOPTS_BY_RULE.entrySet());
+        rules.sort(Comparator.comparingLong(rule -> -total(rule.getValue())));
+
+        var report = new StringBuilder("Anacondy deoptimisations by rule\n");
+        for (var rule : rules) {
+            report.append('\n').append(rule.getKey()).append(": ").append(total(rule.getValue())).append('\n');
+
+            var methods = new ArrayList<>(rule.getValue().entrySet());
+            methods.sort(Comparator.comparingLong(method -> -method.getValue().sum()));
+            for (var method : methods)
+                report.append("    ").append(method.getValue().sum()).append(' ').append(method.getKey()).append('\n');
+        }
+
+        try {
+            Files.writeString(path, report);
+            LOGGER.info("Wrote deoptimisation report for {} rules to {}", rules.size(), path.toAbsolutePath());
+        } catch (IOException e) {
+            LOGGER.error("Failed to write deoptimisation report to {}", path.toAbsolutePath(), e);
+        }
+    }
+
+    private static long total(Map<String, LongAdder> deoptsByMethod) {
+        long total = 0;
+        for (var count : deoptsByMethod.values())
+            total += count.sum();
+        return total;
+    }
+}
@@ -0,0 +1,79 @@
+package ga.ozli.minecraftmods.anacondy;
+
+import org.jspecify.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+/**
+ * A call site that's constant for the lifetime of an {@link InvalidationEpoch}. The first call after linking or an
+ * invalidation reads the live value and folds it to a constant guarded by the epoch's current switch point.
+ * <p>The call site's arguments are assumed to be the same on every call (e.g. the singleton receiver of a field get),
+ * so are only passed to the live handle when relinking.</p>
+ * <p>An optional ready check, taking the same arguments, defers folding while the live value may still change outside
+ * of the epoch, such as a registry that hasn't been frozen yet. Until it passes, the call site is linked straight to
+ * the live value for the rest of the epoch, and only checked again once the epoch is invalidated.</p>
+ */
+final class EpochCallSite extends MutableCallSite {
+    private static final MethodHandle RELINK_HANDLE;
+    static {
+        try {
+            RELINK_HANDLE = MethodHandles.lookup().findVirtual(
+                    EpochCallSite.class,
+                    "relink",
+                    MethodType.methodType(Object.class, Object[].class)
+            );
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final InvalidationEpoch epoch;
+    private final Class<?> owner;
+    private final String name;
+    private final MethodHandle live;
+    private final @Nullable MethodHandle readyCheck;
+    private final MethodHandle relinker;
+
+    EpochCallSite(InvalidationEpoch epoch, Class<?> owner, String name, MethodType type, MethodHandle live) {
+        this(epoch, owner, name, type, live, null);
+    }
+
+    EpochCallSite(
+            InvalidationEpoch epoch, Class<?> owner, String name, MethodType type, MethodHandle live,
+            @Nullable MethodHandle readyCheck
+    ) {
+        super(type);
+        this.epoch = epoch;
+        this.owner = owner;
+        this.name = name;
+        this.live = live.asType(type);
+        this.readyCheck = readyCheck == null ? null : readyCheck.asType(type.changeReturnType(boolean.class));
+        this.relinker = RELINK_HANDLE.bindTo(this)
+                .asCollector(Object[].class, type.parameterCount())
+                .asType(type);
+        setTarget(relinker);
+    }
+
+    private Object relink(Object[] args) throws Throwable {
+        // Grab the switch point before reading the live value so that an invalidation racing with us is never missed
+        var switchPoint = epoch.current();
+        if (readyCheck != null && !(boolean) readyCheck.invokeWithArguments(args)) {
+            setTarget(switchPoint.guardWithTest(live, relinker));
+            return live.invokeWithArguments(args);
+        }
+
+        var value = live.invokeWithArguments(args);
+
+        var constant = MethodHandles.dropArguments(
+                MethodHandles.constant(type().returnType(), value),
+                0, type().parameterList()
+        );
+        setTarget(switchPoint.guardWithTest(constant, relinker));
+        AnacondyEvents.retargeted(owner, name, "epoch constant");
+
+        return value;
+    }
+}
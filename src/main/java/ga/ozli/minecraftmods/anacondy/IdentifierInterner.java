@@ -0,0 +1,89 @@
+package ga.ozli.minecraftmods.anacondy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in interner of {@code Identifier}s, so that the millions of equal instances decoded from NBT, packets and
+ * datapacks share one instance instead of each holding onto their own copy and strings, and so that comparing them hits
+ * the identity check at the start of {@code equals}.
+ * <p>Every {@code Identifier} made inside its class is passed through here by
+ * {@link ga.ozli.minecraftmods.anacondy.transformer.IdentifierInternTransformer}. The interner is a lossy, direct-mapped
+ * table with a fixed number of slots, sized with {@code -Danacondy.internIdentifiers.slots} (default 65536), so its
+ * memory is bounded no matter how many distinct identifiers there are. A colliding identifier replaces the previous one
+ * in its slot rather than being chained. Slots are read and written without locking, which is safe as the entries are
+ * immutable and losing a racing write only costs a later miss.</p>
+ * <p>Hit/miss counts and an estimate of the heap taken by the duplicates that were dropped are logged on shutdown when
+ * {@code -Danacondy.stats=true} is set.</p>
+ */
+public final class IdentifierInterner {
+    private IdentifierInterner() {}
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdentifierInterner.class);
+
+    /** Object header and two compressed references, padded to 8 bytes */
+    private static final int IDENTIFIER_BYTES = 24;
+    /** Object header, the {@code value} reference, hash, coder and hashIsZero, padded to 8 bytes */
+    private static final int STRING_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private record Entry(Object identifier, String namespace, String path) {}
+
+    private static final Entry[] SLOTS = new Entry[slotCount()];
+    private static final int MASK = SLOTS.length - 1;
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder BYTES_SAVED = new LongAdder();
+
+    static {
+        if (Boolean.getBoolean("anacondy.stats")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                long hits = HITS.sum();
+                long total = hits + MISSES.sum();
+                LOGGER.info(
+                        "Interned identifiers: {} hits out of {} ({}%), dropping ~{}KiB of duplicates",
+                        hits, total, total == 0 ? 0 : hits * 100 / total, BYTES_SAVED.sum() / 1024
+                );
+            }, "Anacondy identifier interner stats"));
+        }
+    }
+
+    private static int slotCount() {
+        int slots = Integer.getInteger("anacondy.internIdentifiers.slots", 1 << 16);
+        return Integer.highestOneBit(Math.clamp(slots, 1, 1 << 30));
+    }
+
+    /**
+     * @param identifier a newly made identifier
+     * @param namespace  its namespace
+     * @param path       its path
+     * @return an equal identifier that was interned earlier, or the given one if there isn't one
+     */
+    public static Object intern(Object identifier, String namespace, String path) {
+        int hash = 31 * namespace.hashCode() + path.hashCode();
+        int index = (hash ^ (hash >>> 16)) & MASK;
+
+        var entry = SLOTS[index];
+        if (entry != null && entry.path.equals(path) && entry.namespace.equals(namespace)) {
+            HITS.increment();
+            BYTES_SAVED.add(IDENTIFIER_BYTES
+                    + (namespace != entry.namespace ? stringBytes(namespace) : 0)
+                    + (path != entry.path ? stringBytes(path) : 0));
+            return entry.identifier;
+        }
+
+        MISSES.increment();
+        SLOTS[index] = new Entry(identifier, namespace, path);
+        return identifier;
+    }
+
+    /**
+     * @return roughly how much heap the given string takes, assuming it's Latin-1 as identifiers are
+     */
+    private static int stringBytes(String string) {
+        return STRING_BYTES + ((ARRAY_HEADER_BYTES + string.length() + 7) & ~7);
+    }
+}
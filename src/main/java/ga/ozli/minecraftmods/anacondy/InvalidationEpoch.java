@@ -0,0 +1,21 @@
+package ga.ozli.minecraftmods.anacondy;
+
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * A resettable {@link SwitchPoint}. Call sites guarded by the current switch point fall back to relinking once
+ * {@link #invalidate()} is called, at which point they pick up the next one.
+ */
+final class InvalidationEpoch {
+    private volatile SwitchPoint current = new SwitchPoint();
+
+    SwitchPoint current() {
+        return current;
+    }
+
+    synchronized void invalidate() {
+        var previous = current;
+        current = new SwitchPoint();
+        SwitchPoint.invalidateAll(new SwitchPoint[] {previous});
+    }
+}
@@ -0,0 +1,84 @@
+package ga.ozli.minecraftmods.anacondy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shared getter call site of a {@link ga.ozli.minecraftmods.anacondy.transformer.StaticFieldGetToIndy.MostlyConstant}
+ * field. Each write retargets the getter to a constant of the new value, unless the field turns out to be written more
+ * often than the write budget allows, in which case the getter is permanently demoted back to plain field reads to
+ * avoid a deoptimisation storm.
+ */
+final class MostlyConstantCallSite extends MutableCallSite {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MostlyConstantCallSite.class);
+
+    /** How many writes are allowed within a single window before the field is demoted */
+    private static final int WRITE_BUDGET = Integer.getInteger("anacondy.mostlyConstant.writeBudget", 8);
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("anacondy.mostlyConstant.windowMillis", 1000L)
+    );
+
+    private final Class<?> owner;
+    private final String name;
+    private final MethodHandle plainGetter;
+
+    /** Invalidated on demotion, switching every setter of this field over to the plain setter */
+    private final SwitchPoint demotion = new SwitchPoint();
+    private boolean demoted;
+    /** Only meaningful relative to other {@link System#nanoTime()} values, which may be negative */
+    private long windowStart = System.nanoTime();
+    private int writesInWindow;
+
+    MostlyConstantCallSite(Class<?> owner, String name, MethodHandle plainGetter) {
+        super(plainGetter);
+        this.owner = owner;
+        this.name = name;
+        this.plainGetter = plainGetter;
+    }
+
+    /**
+     * @return a setter that retargets this getter on each write until demoted, after which it's a plain field set
+     */
+    MethodHandle guardSetter(MethodHandle trackingSetter, MethodHandle plainSetter) {
+        return demotion.guardWithTest(trackingSetter, plainSetter);
+    }
+
+    /**
+     * Called after each write to the field while it's still eligible for constant folding.
+     */
+    synchronized void onWrite(Object value) {
+        if (demoted) return; // lost a race with the write that demoted us
+
+        long now = System.nanoTime();
+        if (now - windowStart > WINDOW_NANOS) {
+            windowStart = now;
+            writesInWindow = 0;
+        }
+
+        if (++writesInWindow > WRITE_BUDGET) {
+            demote();
+            return;
+        }
+
+        setTarget(MethodHandles.constant(type().returnType(), value));
+        AnacondyEvents.retargeted(owner, name, "constant");
+    }
+
+    private void demote() {
+        demoted = true;
+        setTarget(plainGetter);
+        SwitchPoint.invalidateAll(new SwitchPoint[] {demotion});
+        AnacondyEvents.retargeted(owner, name, "demoted");
+
+        LOGGER.info(
+                "Demoted mostly constant field {}.{} to plain reads after {} writes within {}ms",
+                owner.getName(), name, writesInWindow, TimeUnit.NANOSECONDS.toMillis(WINDOW_NANOS)
+        );
+    }
+}
@@ -0,0 +1,151 @@
+package ga.ozli.minecraftmods.anacondy;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide cache of resolved {@code invokeNonNull} CONDY values.
+ * <p>The same logical constant (e.g. {@code MINECRAFT_INSTANCE}) is copied into the constant pool of every class that
+ * Anacondy rewrites, so without this the JVM would run its bootstrap again for each of them. Constants are identified by
+ * the member their handle points to along with their static args, so the underlying getter only runs once per process.
+ * </p>
+ * <p>Only getters known to return the same value for the same args are shared: reads of final fields and the
+ * {@link #SINGLETON_ACCESSORS}. Anything else is resolved separately by each class, as a value shared from an earlier
+ * resolution could be stale.</p>
+ * <p>Can be disabled with {@code -Danacondy.dedupeConstants=false}. Hit/miss counts are logged on shutdown when
+ * {@code -Danacondy.stats=true} is set.</p>
+ */
+final class ResolvedConstants {
+    private ResolvedConstants() {}
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolvedConstants.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("anacondy.dedupeConstants", "true"));
+
+    /** Non-final fields and methods that always return the same singleton once non-null, as "owner.name" */
+    private static final Set<String> SINGLETON_ACCESSORS = Set.of(
+            "net.minecraft.client.Minecraft.instance",
+            "net.minecraft.client.Minecraft.getInstance"
+    );
+
+    private static final ConcurrentHashMap<Key, Object> VALUES = new ConcurrentHashMap<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    static {
+        if (ENABLED && Boolean.getBoolean("anacondy.stats")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> LOGGER.info(
+                    "Resolved {} unique CONDY values, skipping {} duplicate bootstrap invocations",
+                    MISSES.sum(), HITS.sum()
+            ), "Anacondy constant stats"));
+        }
+    }
+
+    static Object resolve(MethodHandles.Lookup lookup, String name, MethodHandle handle) throws Throwable {
+        var key = keyOf(lookup, handle, 0, null, null);
+        if (key == null)
+            return Objects.requireNonNull(handle.invoke(), name);
+
+        var cached = VALUES.get(key);
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+
+        return cache(key, Objects.requireNonNull(handle.invoke(), name));
+    }
+
+    static Object resolve(MethodHandles.Lookup lookup, String name, MethodHandle handle, Object arg) throws Throwable {
+        var key = keyOf(lookup, handle, 1, arg, null);
+        if (key == null)
+            return Objects.requireNonNull(handle.invoke(arg), name);
+
+        var cached = VALUES.get(key);
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+
+        return cache(key, Objects.requireNonNull(handle.invoke(arg), name));
+    }
+
+    static Object resolve(MethodHandles.Lookup lookup, String name, MethodHandle handle, Object arg0, Object arg1)
+            throws Throwable {
+        var key = keyOf(lookup, handle, 2, arg0, arg1);
+        if (key == null)
+            return Objects.requireNonNull(handle.invoke(arg0, arg1), name);
+
+        var cached = VALUES.get(key);
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+
+        return cache(key, Objects.requireNonNull(handle.invoke(arg0, arg1), name));
+    }
+
+    private static Object cache(Key key, Object value) {
+        MISSES.increment();
+
+        // If another class resolved the same constant concurrently, agree on whichever got there first
+        var existing = VALUES.putIfAbsent(key, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * @return the key identifying the constant, or null if it can't be shared
+     */
+    private static @Nullable Key keyOf(
+            MethodHandles.Lookup lookup, MethodHandle handle, int arity, @Nullable Object arg0, @Nullable Object arg1
+    ) {
+        if (!ENABLED) return null;
+
+        MethodHandleInfo info;
+        try {
+            info = lookup.revealDirect(handle);
+        } catch (IllegalArgumentException e) {
+            return null; // not a direct handle, so there's nothing stable to identify it by
+        }
+        if (!isPure(lookup, info)) return null;
+
+        return new Key(
+                info.getDeclaringClass(), info.getName(), info.getMethodType(), info.getReferenceKind(),
+                arity, arg0, arg1
+        );
+    }
+
+    /**
+     * @return whether the getter is known to return the same value every time it's called with the same args
+     */
+    private static boolean isPure(MethodHandles.Lookup lookup, MethodHandleInfo info) {
+        if (SINGLETON_ACCESSORS.contains(info.getDeclaringClass().getName() + '.' + info.getName())) return true;
+
+        return switch (info.getReferenceKind()) {
+            case MethodHandleInfo.REF_getStatic, MethodHandleInfo.REF_getField -> {
+                try {
+                    yield Modifier.isFinal(info.reflectAs(Field.class, lookup).getModifiers());
+                } catch (IllegalArgumentException | ClassCastException e) {
+                    yield false;
+                }
+            }
+            default -> false;
+        };
+    }
+
+    private record Key(
+            Class<?> owner, String name, MethodType type, int referenceKind,
+            int arity, @Nullable Object arg0, @Nullable Object arg1
+    ) {}
+}
@@ -8,9 +8,12 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.constant.ConstantDescs;
 import java.lang.constant.DirectMethodHandleDesc;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
 import static cpw.mods.modlauncher.api.ITransformer.Target.targetMethod;
@@ -40,6 +43,21 @@ public final class AnacondyTransformers {
             ConstantDescs.CD_Object,
             ConstantDescs.CD_MethodHandle
     );
+    static final DirectMethodHandleDesc BSM_INVOKE_NON_NULL_1_ARG = ConstantDescs.ofConstantBootstrap(
+            BSM_INVOKE_NON_NULL.owner(),
+            BSM_INVOKE_NON_NULL.methodName(),
+            ConstantDescs.CD_Object,
+            ConstantDescs.CD_MethodHandle,
+            ConstantDescs.CD_Object
+    );
+    static final DirectMethodHandleDesc BSM_INVOKE_NON_NULL_2_ARGS = ConstantDescs.ofConstantBootstrap(
+            BSM_INVOKE_NON_NULL.owner(),
+            BSM_INVOKE_NON_NULL.methodName(),
+            ConstantDescs.CD_Object,
+            ConstantDescs.CD_MethodHandle,
+            ConstantDescs.CD_Object,
+            ConstantDescs.CD_Object
+    );
     static final DirectMethodHandleDesc BSM_INVOKE_NON_NULL_WITH_ARGS = ConstantDescs.ofConstantBootstrap(
             BSM_INVOKE_NON_NULL.owner(),
             BSM_INVOKE_NON_NULL.methodName(),
@@ -50,8 +68,42 @@ public final class AnacondyTransformers {
 
     static final Handle HANDLE_BSM_INVOKE = Utils.toAsmHandle(ConstantDescs.BSM_INVOKE);
     static final Handle HANDLE_BSM_INVOKE_NON_NULL = Utils.toAsmHandle(BSM_INVOKE_NON_NULL);
+    static final Handle HANDLE_BSM_INVOKE_NON_NULL_1_ARG = Utils.toAsmHandle(BSM_INVOKE_NON_NULL_1_ARG);
+    static final Handle HANDLE_BSM_INVOKE_NON_NULL_2_ARGS = Utils.toAsmHandle(BSM_INVOKE_NON_NULL_2_ARGS);
     static final Handle HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS = Utils.toAsmHandle(BSM_INVOKE_NON_NULL_WITH_ARGS);
 
+    static final Handle HANDLE_BSM_FOLD_WHEN_NON_NULL = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+            "foldWhenNonNull",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
+    static final Handle HANDLE_BSM_FOLD_SINGLETON_LAMBDA = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+            "foldSingletonLambda",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
+    static final Handle HANDLE_BSM_FOLD_AFTER_BOOTSTRAP = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+            "foldAfterBootstrap",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
+    static final Handle HANDLE_BSM_ENUM_ORDINALS_MATCH = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+            "enumOrdinalsMatch",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Class;Ljava/lang/String;)Z",
+            false
+    );
+
     private static final ConstantDynamic CONDY_MC_INSTANCE_FIELD = new ConstantDynamic(
             "MINECRAFT_INSTANCE",
             HANDLE_MC_INSTANCE_FIELD.getDesc(),
@@ -82,7 +134,7 @@ public final class AnacondyTransformers {
     @SuppressWarnings("rawtypes")
     public static List<ITransformer> getAll() {
         LOGGER.info("Anacondy started");
-        return List.of(
+        var rules = new ArrayList<Rule>(List.of(
                 // Rewrite `GETSTATIC Minecraft.instance` inside `Minecraft.getInstance()` to use LDC ConstantDynamic
                 new StaticFieldGetToCondy(
                         TARGET_MC_GET_INSTANCE_METHOD,
@@ -109,41 +161,58 @@ public final class AnacondyTransformers {
                         "cpuInfo"
                 ),
 
+                // `GETSTATIC Bootstrap.isBootstrapped` inside `Bootstrap.checkBootstrapCalled(Supplier)`, which is
+                // false until `Bootstrap.bootStrap()` starts and then stays true
+                new StaticFieldGetToIndy.ConstantOnceNonDefault(
+                        targetMethod(
+                                "net/minecraft/server/Bootstrap",
+                                "checkBootstrapCalled",
+                                "(Ljava/util/function/Supplier;)V"
+                        ),
+                        "isBootstrapped"
+                ),
+
                 new DebugEntrySystemSpecsTransformer(),
 
                 new SingletonAccessedForeignFieldsTransformer(
                         Set.of(
-                                // some of these are commented out due to deadlock issues during startup - needs further investigation
                                 targetClass("com/mojang/blaze3d/systems/RenderSystem"),
 
-//                                targetClass("net/minecraft/client/MouseHandler"),
-
-//                                targetClass("net/minecraft/client/gui/components/DebugScreenOverlay"),
-
                                 targetClass("net/minecraft/client/gui/components/debug/DebugEntryFps"),
                                 targetClass("net/minecraft/client/gui/components/debug/DebugEntryEntityRenderStats"),
                                 targetClass("net/minecraft/client/gui/components/debug/DebugEntryParticleRenderStats"),
                                 targetClass("net/minecraft/client/gui/components/debug/DebugEntryPostEffect"),
                                 targetClass("net/minecraft/client/gui/components/debug/DebugEntrySimplePerformanceImpactors"),
-//
-                                targetClass("net/minecraft/client/gui/render/GuiRenderer"),
 
-//                                targetClass("net/minecraft/client/multiplayer/ClientLevel"),
+                                targetClass("net/minecraft/client/gui/render/GuiRenderer"),
 
                                 targetClass("net/minecraft/client/renderer/CloudRenderer"),
-//                                targetClass("net/minecraft/client/renderer/GameRenderer")
-//                                targetClass("net/minecraft/client/renderer/LevelRenderer"),
-//                                targetClass("net/minecraft/client/renderer/LightTexture"),
-//                                targetClass("net/minecraft/client/renderer/ItemInHandRenderer"),
 
                                 targetClass("net/minecraft/client/renderer/debug/DebugRenderer")
-
-//                                targetClass("net/minecraft/client/renderer/feature/TextFeatureRenderer")
                         ),
                         CONDY_MC_GET_INSTANCE,
                         TRUSTED_MC_FIELDS
                 ),
 
+                // These are constructed and used during `Minecraft`'s own construction, where resolving a CONDY
+                // deadlocks startup, so their reads are only folded once `Minecraft.<init>` has returned
+                new SingletonAccessedForeignFieldsTransformer(
+                        Set.of(
+                                targetClass("net/minecraft/client/MouseHandler"),
+                                targetClass("net/minecraft/client/gui/components/DebugScreenOverlay"),
+                                targetClass("net/minecraft/client/multiplayer/ClientLevel"),
+                                targetClass("net/minecraft/client/renderer/GameRenderer"),
+                                targetClass("net/minecraft/client/renderer/LevelRenderer"),
+                                targetClass("net/minecraft/client/renderer/LightTexture"),
+                                targetClass("net/minecraft/client/renderer/ItemInHandRenderer"),
+                                targetClass("net/minecraft/client/renderer/feature/TextFeatureRenderer")
+                        ),
+                        CONDY_MC_GET_INSTANCE,
+                        TRUSTED_MC_FIELDS,
+                        FieldResolution.AFTER_SINGLETON_INIT
+                ),
+                new SingletonInitTracker(targetClass(Utils.MINECRAFT_CLASS_NAME)),
+
                 new SingletonAccessedFieldsTransformer(
                         targetClass(Utils.MINECRAFT_CLASS_NAME),
                         CONDY_MC_INSTANCE_FIELD,
@@ -153,175 +222,29 @@ public final class AnacondyTransformers {
 
                                 // only called once during shutdown
                                 "close", "destroy", "emergencySave", "emergencySaveAndCrash"
-                        )
-                ),
-
-                new SingletonAccessedFieldsTransformer(
-                        targetClass("net/minecraft/client/Options"),
-                        new ConstantDynamic(
-                                "OPTIONS_INSTANCE",
-                                "Lnet/minecraft/client/Options;",
-                                HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                new Handle(
-                                        Opcodes.H_GETFIELD,
-                                        Utils.MINECRAFT_CLASS_NAME,
-                                        "options",
-                                        "Lnet/minecraft/client/Options;",
-                                        false
-                                ),
-                                CONDY_MC_GET_INSTANCE
                         ),
-                        Set.of(
-                                // only called once during startup
-                                ConstantDescs.CLASS_INIT_NAME, ConstantDescs.INIT_NAME,
-                                "setForgeKeybindProperties", "getFile", "load",
-
-                                // breaks startup if constant folded
-                                "processOptions",
-
-                                // just in case
-                                "processDumpedOptions", "dumpOptionsForReport", "processOptionsEnd", "save"
-                        )
+                        // `Options.getFullscreenVideoModeString()` reads the window during construction, before
+                        // it's assigned
+                        Set.of("window")
                 ),
 
-                new ClassToRecordTransformer(),
-
-                //region Rendering
-                new SingletonAccessedFieldsTransformer(
-                        targetClass("net/minecraft/client/renderer/GameRenderer"),
-                        new ConstantDynamic(
-                                "GAME_RENDERER_INSTANCE",
-                                "Lnet/minecraft/client/renderer/GameRenderer;",
-                                HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                new Handle(
-                                        Opcodes.H_GETFIELD,
-                                        Utils.MINECRAFT_CLASS_NAME,
-                                        "gameRenderer",
-                                        "Lnet/minecraft/client/renderer/GameRenderer;",
-                                        false
-                                ),
-                                CONDY_MC_GET_INSTANCE
-                        )
-                ),
+                new ClassToRecordTransformer()
+        ));
 
-                new SingletonAccessedFieldsTransformer(
-                        targetClass("net/minecraft/client/renderer/LevelRenderer"),
-                        new ConstantDynamic(
-                                "LEVEL_RENDERER_INSTANCE",
-                                "Lnet/minecraft/client/renderer/LevelRenderer;",
-                                HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                new Handle(
-                                        Opcodes.H_GETFIELD,
-                                        Utils.MINECRAFT_CLASS_NAME,
-                                        "levelRenderer",
-                                        "Lnet/minecraft/client/renderer/LevelRenderer;",
-                                        false
-                                ),
-                                CONDY_MC_GET_INSTANCE
-                        )
-                ),
+        // Singletons declared in anacondy/singletons.txt, such as the renderers
+        var singletonGraph = SingletonGraph.load(CONDY_MC_GET_INSTANCE);
+        rules.addAll(singletonGraph.rules());
 
-                // todo: reconsider condy on DebugRenderer - only really applies to grabbing the renderers field for the
-                //       iterator inside the emitGizmos method - probably not worth it
-                // net/minecraft/client/renderer/debug/DebugRenderer
-                new SingletonAccessedFieldsTransformer(
-                        targetClass("net/minecraft/client/renderer/debug/DebugRenderer"),
-                        new ConstantDynamic(
-                                "DEBUG_RENDERER_INSTANCE",
-                                "Lnet/minecraft/client/renderer/debug/DebugRenderer;",
-                                HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                new Handle(
-                                        Opcodes.H_GETFIELD,
-                                        "net/minecraft/client/renderer/LevelRenderer",
-                                        "debugRenderer",
-                                        "Lnet/minecraft/client/renderer/debug/DebugRenderer;",
-                                        false
-                                ),
-                                new ConstantDynamic(
-                                        "LEVEL_RENDERER_INSTANCE",
-                                        "Lnet/minecraft/client/renderer/LevelRenderer;",
-                                        HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                        new Handle(
-                                                Opcodes.H_GETFIELD,
-                                                Utils.MINECRAFT_CLASS_NAME,
-                                                "levelRenderer",
-                                                "Lnet/minecraft/client/renderer/LevelRenderer;",
-                                                false
-                                        ),
-                                        CONDY_MC_GET_INSTANCE
-                                )
-                        ),
-                        // whitelist only emitGizmos
-                        methodName -> !methodName.equals("emitGizmos")
-                ),
-
-                new SingletonAccessedFieldsTransformer(
-                        targetClass("net/minecraft/client/renderer/RenderBuffers"),
-                        new ConstantDynamic(
-                                "RENDER_BUFFERS_INSTANCE",
-                                "Lnet/minecraft/client/renderer/RenderBuffers;",
-                                HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                new Handle(
-                                        Opcodes.H_GETFIELD,
-                                        Utils.MINECRAFT_CLASS_NAME,
-                                        "renderBuffers",
-                                        "Lnet/minecraft/client/renderer/RenderBuffers;",
-                                        false
-                                ),
-                                CONDY_MC_GET_INSTANCE
-                        )
-                ),
-
-                // because renderBuffers is private in both LevelRenderer and Minecraft, which prevents CONDY from
-                // resolving due to the lookup class being sourced from RenderBuffers, so we need to make it accessible first
-                new Workarounds.MakeFieldAccessible(
-                        targetClass("net/minecraft/client/Minecraft"),
-                        "renderBuffers",
-                        "Lnet/minecraft/client/renderer/RenderBuffers;"
-                ),
-
-                new SingletonAccessedFieldsTransformer(
-                        targetClass("net/minecraft/client/renderer/feature/FeatureRenderDispatcher"),
-                        new ConstantDynamic(
-                                "FEATURE_RENDER_DISPATCHER_INSTANCE",
-                                "Lnet/minecraft/client/renderer/feature/FeatureRenderDispatcher;",
-                                HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                new Handle(
-                                        Opcodes.H_GETFIELD,
-                                        "net/minecraft/client/renderer/GameRenderer",
-                                        "featureRenderDispatcher",
-                                        "Lnet/minecraft/client/renderer/feature/FeatureRenderDispatcher;",
-                                        false
-                                ),
-                                new ConstantDynamic(
-                                        "GAME_RENDERER_INSTANCE",
-                                        "Lnet/minecraft/client/renderer/GameRenderer;",
-                                        HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                        new Handle(
-                                                Opcodes.H_GETFIELD,
-                                                Utils.MINECRAFT_CLASS_NAME,
-                                                "gameRenderer",
-                                                "Lnet/minecraft/client/renderer/GameRenderer;",
-                                                false
-                                        ),
-                                        CONDY_MC_GET_INSTANCE
-                                )
-                        )
-                ),
-
-                new Workarounds.MakeFieldAccessible(
-                        targetClass("net/minecraft/client/renderer/GameRenderer"),
-                        "featureRenderDispatcher",
-                        "Lnet/minecraft/client/renderer/feature/FeatureRenderDispatcher;"
-                ),
-                //endregion
-
-                new Workarounds.MinecraftClientAddGetWindowNoInlineMethodTransformer(),
-                new Workarounds.OptionsGetFullscreenVideoModeStringFixer(),
+        var copiedSingletons = new HashSet<>(singletonGraph.singletonClasses());
+        copiedSingletons.add("com/mojang/blaze3d/vertex/Tesselator");
 
+        rules.addAll(List.of(
                 // Rewrite `GETFIELD minecraft` copies in various classes to call `Minecraft.getInstance()` instead,
-                // to benefit from the CONDY optimisation there
-                new MinecraftClientFieldCopiesTransformer(),
+                // to benefit from the CONDY optimisation there, and fold copies of the other singletons
+                new SingletonFieldCopiesTransformer(copiedSingletons),
+
+                // Create lambdas and method references capturing only singletons once, rather than every evaluation
+                new SingletonLambdaTransformer(copiedSingletons),
 
                 // `GETSTATIC Tesselator.instance` inside `Tesselator.getInstance()`
                 new StaticFieldGetToCondy(
@@ -385,41 +308,63 @@ public final class AnacondyTransformers {
                         "()Lcom/mojang/blaze3d/systems/SamplerCache;"
                 )),
 
-                new SingletonAccessedFieldsTransformer(
-                        targetClass("net/minecraft/client/Camera"),
-                        new ConstantDynamic(
-                                "CAMERA_INSTANCE",
-                                "Lnet/minecraft/client/Camera;",
-                                HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                new Handle(
-                                        Opcodes.H_GETFIELD,
-                                        "net/minecraft/client/renderer/GameRenderer",
-                                        "mainCamera",
-                                        "Lnet/minecraft/client/Camera;",
-                                        false
-                                ),
-                                new ConstantDynamic(
-                                        "GAME_RENDERER_INSTANCE",
-                                        "Lnet/minecraft/client/renderer/GameRenderer;",
-                                        HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                                        new Handle(
-                                                Opcodes.H_GETFIELD,
-                                                Utils.MINECRAFT_CLASS_NAME,
-                                                "gameRenderer",
-                                                "Lnet/minecraft/client/renderer/GameRenderer;",
-                                                false
-                                        ),
-                                        CONDY_MC_GET_INSTANCE
-                                )
-                        )
-                ),
-                new Workarounds.MakeFieldAccessible(
-                        targetClass("net/minecraft/client/renderer/GameRenderer"),
-                        "mainCamera",
-                        "Lnet/minecraft/client/Camera;"
+                // Lighting done inside ClassToRecordTransformer instead
+                //endregion
+
+                // Share the arrays of `values()` calls that are only read from, such as in neighbour update loops
+                new EnumValuesTransformer(Set.of(
+                        "net/minecraft/core/Direction",
+                        "net/minecraft/core/Direction$Axis",
+                        "net/minecraft/core/Direction$AxisDirection"
+                )),
+
+                // Switch on the ordinals of enums directly, rather than through javac's `$SwitchMap$` arrays
+                new SwitchMapTransformer(GeneratedRules.INSTANCE.switchMaps()),
+
+                //region Default states
+                // `Blocks.AIR.defaultBlockState()` and the like, folded once the registries have been bootstrapped
+                new DefaultStateTransformer(Set.of(
+                        "net/minecraft/world/level/Level",
+                        "net/minecraft/world/level/chunk/LevelChunk",
+                        "net/minecraft/world/level/chunk/LevelChunkSection"
+                )),
+                new BootstrapTracker(),
+                //endregion
+
+                // Constant key lookups in the built-in registries and `Holder.value()` on static holders, folded
+                // while their registry is frozen
+                new RegistryConstantTransformer(),
+                new RegistryFreezeTracker(),
+
+                // `Identifier.fromNamespaceAndPath("minecraft", "stone")` and the like, made once per call site
+                new IdentifierLiteralTransformer(),
+
+                //region Session constants
+                // `Minecraft.level` is replaced when changing world or disconnecting, so can only be folded for the
+                // duration of a session. Writes to it inside Minecraft invalidate all session constants together.
+                new SessionConstantTransformer(
+                        Set.of(
+                                targetClass("net/minecraft/client/Gui"),
+                                targetClass("net/minecraft/client/KeyboardHandler"),
+                                targetClass("net/minecraft/client/MouseHandler"),
+                                targetClass("net/minecraft/client/gui/components/DebugScreenOverlay"),
+                                targetClass("net/minecraft/client/multiplayer/MultiPlayerGameMode"),
+                                targetClass("net/minecraft/client/particle/ParticleEngine"),
+                                targetClass("net/minecraft/client/player/LocalPlayer"),
+                                targetClass("net/minecraft/client/renderer/GameRenderer"),
+                                targetClass("net/minecraft/client/renderer/ItemInHandRenderer"),
+                                targetClass("net/minecraft/client/renderer/LevelRenderer")
+                        ),
+                        Utils.MINECRAFT_CLASS_NAME,
+                        Set.of("level")
                 ),
 
-                // Lighting done inside ClassToRecordTransformer instead
+                // Per-level renderer state, replaced inside `LevelRenderer.setLevel(ClientLevel)`
+                new SessionConstantTransformer(
+                        Set.of(),
+                        "net/minecraft/client/renderer/LevelRenderer",
+                        Set.of("level")
+                ),
                 //endregion
 
                 //region Forge
@@ -433,6 +378,35 @@ public final class AnacondyTransformers {
                         "SHADERS"
                 )
                 //endregion
-        );
+        ));
+
+        // Fold the getters of singletons found by the generateAnacondyRules task, unless already handled above
+        var handledTargets = rules.stream()
+                .flatMap(rule -> rule.targets().stream())
+                .collect(Collectors.toUnmodifiableSet());
+        for (var singleton : GeneratedRules.INSTANCE.singletons()) {
+            if (!handledTargets.contains(singleton.getterTarget()))
+                rules.add(new StaticFieldGetToIndy.ConstantOnceNonNull(singleton.getterTarget(), singleton.fieldName()));
+        }
+
+        // Finalise the statics only written in their own static initialiser, or failing that, fold their getters
+        // once set where the field is only ever set to non-null values. Opt-in as other mods may write to them
+        var staticOwners = GeneratedRules.INSTANCE.effectivelyFinalStaticOwners();
+        if (StaticFinalizer.ENABLED && !staticOwners.isEmpty())
+            rules.add(new StaticFinalizer(GeneratedRules.withGenerated(Set.of(), staticOwners)));
+
+        // Share one instance between equal identifiers, opt-in as it's only worth it on large servers
+        if (IdentifierInternTransformer.ENABLED)
+            rules.add(new IdentifierInternTransformer());
+
+        for (var lazyStatic : GeneratedRules.INSTANCE.lazyStaticGetters()) {
+            if (!handledTargets.contains(lazyStatic.getterTarget()))
+                rules.add(new StaticFieldGetToIndy.ConstantOnceNonNull(lazyStatic.getterTarget(), lazyStatic.fieldName()));
+        }
+
+        // Instruction rewrites are applied together in a single pass per class
+        var transformers = RewriteEngine.compile(rules);
+
+        return List.copyOf(transformers);
     }
 }
@@ -0,0 +1,48 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.NonNull;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.Set;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+
+/**
+ * Signals the end of {@code BuiltInRegistries.bootStrap()} to {@code AnacondyBootstraps#registriesBootstrapped()},
+ * allowing {@link DefaultStateTransformer} call sites to start folding.
+ * <p>{@code Bootstrap.isBootstrapped} can't be used for this, as it's set before the registries are filled in to guard
+ * against reentrant bootstrapping. Freezing the built-in registries is the last step that touches their contents.</p>
+ */
+record BootstrapTracker() implements Transformer<ClassNode>, ITransformer<ClassNode> {
+    private static final String BUILT_IN_REGISTRIES_CLASS_NAME = "net/minecraft/core/registries/BuiltInRegistries";
+
+    @Override
+    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
+        for (var methodNode : classNode.methods) {
+            if (!methodNode.name.equals("bootStrap") || !methodNode.desc.equals("()V")) continue;
+
+            for (var insn : methodNode.instructions.toArray()) {
+                if (!(insn instanceof InsnNode && insn.getOpcode() == Opcodes.RETURN)) continue;
+
+                methodNode.instructions.insertBefore(insn, new MethodInsnNode(
+                        Opcodes.INVOKESTATIC,
+                        "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+                        "registriesBootstrapped",
+                        "()V",
+                        false
+                ));
+            }
+        }
+
+        return classNode;
+    }
+
+    @Override
+    public @NotNull Set<Target> targets() {
+        return Set.of(targetClass(BUILT_IN_REGISTRIES_CLASS_NAME));
+    }
+}
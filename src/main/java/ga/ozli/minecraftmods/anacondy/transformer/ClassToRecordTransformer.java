@@ -41,6 +41,15 @@ final class ClassToRecordTransformer implements Transformer<ClassNode>, ITransfo
 
     @Override
     public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
+        var ineligibility = RecordEligibility.check(classNode);
+        if (ineligibility == null)
+            ineligibility = GeneratedRules.INSTANCE.nonRecordReasons().get(classNode.name);
+
+        if (ineligibility != null) {
+            AnacondyTransformers.LOGGER.debug("Not converting {} to a record: {}", classNode.name, ineligibility);
+            return classNode;
+        }
+
         for (var fieldNode : classNode.fields) {
             if ((fieldNode.access & Opcodes.ACC_STATIC) != 0) continue; // skip static fields
 
@@ -65,15 +74,8 @@ final class ClassToRecordTransformer implements Transformer<ClassNode>, ITransfo
             }
         }
 
-        if (classNode.recordComponents == null)
-            throw new IllegalArgumentException("Cannot convert class " + classNode.name + " to record because it has no final instance fields.");
-
         // Mark class as a record
         classNode.access |= Opcodes.ACC_RECORD | Opcodes.ACC_FINAL;
-
-        if (classNode.superName != null && !classNode.superName.equals("java/lang/Object"))
-            throw new IllegalArgumentException("Cannot convert class " + classNode.name + " to record because it already has a superclass: " + classNode.superName);
-
         classNode.superName = "java/lang/Record";
 
         // Make the canonical constructor if needed. If it already exists, just update its access modifiers to match the class'
@@ -215,7 +217,7 @@ final class ClassToRecordTransformer implements Transformer<ClassNode>, ITransfo
 
     @Override
     public @NotNull Set<Target> targets() {
-        return Set.of(
+        return GeneratedRules.withGenerated(Set.of(
                 targetClass("com/mojang/blaze3d/audio/Channel"),
 
                 targetClass("com/mojang/blaze3d/buffers/Std140Builder"),
@@ -594,6 +596,6 @@ final class ClassToRecordTransformer implements Transformer<ClassNode>, ITransfo
                 targetClass("net/minecraft/world/CompoundContainer"),
                 targetClass("net/minecraft/world/DifficultyInstance"),
                 targetClass("net/minecraft/world/RandomSequence")
-        );
+        ), GeneratedRules.INSTANCE.recordCandidates());
     }
 }
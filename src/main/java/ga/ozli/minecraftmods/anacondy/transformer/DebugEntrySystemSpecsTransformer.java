@@ -1,14 +1,11 @@
 package ga.ozli.minecraftmods.anacondy.transformer;
 
-import cpw.mods.modlauncher.api.ITransformer;
-import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.ITransformer.Target;
 import org.jetbrains.annotations.NotNull;
-import org.jspecify.annotations.NonNull;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InsnNode;
 import org.objectweb.asm.tree.LdcInsnNode;
-import org.objectweb.asm.tree.MethodInsnNode;
-import org.objectweb.asm.tree.MethodNode;
 
 import java.util.Set;
 
@@ -16,27 +13,31 @@ import java.util.Set;
  * Replaces the call to {@code System.getProperty("java.version")} inside DebugEntrySystemSpecs#display with a constant
  * string that is the result of that call at transformation time.
  */
-public final class DebugEntrySystemSpecsTransformer implements Transformer<MethodNode>, ITransformer<MethodNode> {
+public final class DebugEntrySystemSpecsTransformer implements InsnRule {
     @Override
-    public @NonNull MethodNode transform(MethodNode methodNode, ITransformerVotingContext context) {
-        for (int i = 1; i < methodNode.instructions.size(); i++) {
-            var insn = methodNode.instructions.get(i);
-            if (!(insn instanceof MethodInsnNode methodInsn
-                    && methodInsn.getOpcode() == Opcodes.INVOKESTATIC
-                    && methodInsn.owner.equals("java/lang/System")
-                    && methodInsn.name.equals("getProperty")
-                    && methodInsn.desc.equals("(Ljava/lang/String;)Ljava/lang/String;")))
-                continue;
+    public Set<InsnKey> keys() {
+        return Set.of(new InsnKey(
+                Opcodes.INVOKESTATIC,
+                "java/lang/System",
+                "getProperty",
+                "(Ljava/lang/String;)Ljava/lang/String;"
+        ));
+    }
 
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        return (methodNode, insns, insn) -> {
             var previousInsn = insn.getPrevious();
-            while (!(previousInsn instanceof LdcInsnNode ldcInsnNode && ldcInsnNode.cst.equals("java.version")))
+            while (previousInsn != null && previousInsn.getOpcode() < 0) // skip labels, line numbers and frames
                 previousInsn = previousInsn.getPrevious();
 
-            methodNode.instructions.set(previousInsn, new InsnNode(Opcodes.NOP));
-            methodNode.instructions.set(insn, new LdcInsnNode(System.getProperty("java.version")));
-        }
+            if (!(previousInsn instanceof LdcInsnNode ldcInsnNode && "java.version".equals(ldcInsnNode.cst)))
+                return false;
 
-        return methodNode;
+            methodNode.instructions.set(previousInsn, new InsnNode(Opcodes.NOP));
+            insns.set(new LdcInsnNode(System.getProperty("java.version")));
+            return true;
+        };
     }
 
     @Override
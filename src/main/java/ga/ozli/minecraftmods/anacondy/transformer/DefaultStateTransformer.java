@@ -0,0 +1,88 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Rewrites {@code Blocks.AIR.defaultBlockState()}, {@code Fluids.EMPTY.defaultFluidState()} and the like, which are
+ * everywhere in worldgen, fluid and lighting code, from a static field load followed by a virtual call to a single
+ * invokedynamic that folds to the state.
+ * <p>The states are set while the blocks and fluids are constructed, but are only folded through
+ * {@link ga.ozli.minecraftmods.anacondy.AnacondyBootstraps#foldAfterBootstrap} once {@link BootstrapTracker} has seen
+ * the registries bootstrapped, so nothing is resolved against a half-built registry. An invokedynamic is used rather
+ * than a ConstantDynamic, as a ConstantDynamic can't fall through to the live value until then.</p>
+ *
+ * @param readerClasses the internal names of the classes to rewrite, in addition to those found by the
+ *                      generateAnacondyRules task
+ */
+record DefaultStateTransformer(Set<String> readerClasses) implements InsnRule {
+    /** The classes holding the game's blocks and fluids, and the getter of each one's default state */
+    static final Map<String, DefaultStateGetter> GETTERS_BY_HOLDER = Map.of(
+            "net/minecraft/world/level/block/Blocks",
+            new DefaultStateGetter("defaultBlockState", "()Lnet/minecraft/world/level/block/state/BlockState;"),
+
+            "net/minecraft/world/level/material/Fluids",
+            new DefaultStateGetter("defaultFluidState", "()Lnet/minecraft/world/level/material/FluidState;")
+    );
+
+    record DefaultStateGetter(String name, String desc) {}
+
+    @Override
+    public Set<InsnKey> keys() {
+        // Keyed by descriptor alone, as the owner is whatever type the holder's field is declared as
+        return GETTERS_BY_HOLDER.values().stream()
+                .map(getter -> new InsnKey(Opcodes.INVOKEVIRTUAL, null, null, getter.desc()))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        return (methodNode, insns, insn) -> {
+            var methodInsn = (MethodInsnNode) insn;
+
+            // Expect `GETSTATIC Blocks.X; INVOKEVIRTUAL defaultBlockState()`, with nothing but a line number between
+            var previous = methodInsn.getPrevious();
+            while (previous instanceof LineNumberNode)
+                previous = previous.getPrevious();
+            if (!(previous instanceof FieldInsnNode fieldInsn && fieldInsn.getOpcode() == Opcodes.GETSTATIC))
+                return false;
+
+            var getter = GETTERS_BY_HOLDER.get(fieldInsn.owner);
+            if (getter == null || !getter.name().equals(methodInsn.name) || !getter.desc().equals(methodInsn.desc))
+                return false;
+
+            methodNode.instructions.remove(fieldInsn);
+            insns.set(new InvokeDynamicInsnNode(
+                    fieldInsn.name,
+                    Type.getMethodDescriptor(Type.getReturnType(methodInsn.desc)),
+                    AnacondyTransformers.HANDLE_BSM_FOLD_AFTER_BOOTSTRAP,
+                    new Handle(Opcodes.H_GETSTATIC, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, false),
+                    new Handle(Opcodes.H_INVOKEVIRTUAL, methodInsn.owner, methodInsn.name, methodInsn.desc, methodInsn.itf)
+            ));
+            AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+            Utils.recordRewrite(this, classNode.name, methodNode);
+            return true;
+        };
+    }
+
+    // Classes found by the generateAnacondyRules task are added to this list automatically
+    @Override
+    public @NotNull Set<Target> targets() {
+        var classNames = new HashSet<>(readerClasses);
+        classNames.addAll(GeneratedRules.INSTANCE.defaultStateReaders());
+        return GeneratedRules.withGenerated(Set.of(), classNames);
+    }
+}
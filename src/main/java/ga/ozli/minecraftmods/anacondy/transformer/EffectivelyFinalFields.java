@@ -0,0 +1,239 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.lang.constant.ConstantDescs;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Proves which non-final instance fields of a class are effectively final with a data-flow analysis of the class' own
+ * methods. A field qualifies if it's written at exactly one place, on {@code this} inside a constructor or inside a
+ * private "constructor helper" method that is itself only ever called on {@code this} from constructors or other
+ * helpers, and no method handle writes to it.
+ * <p>The constructor helpers are returned too, as they run mid-construction where fields, and the singleton they may
+ * be read through, can still be unassigned.</p>
+ * <p>Only the given class is looked at, so writes from elsewhere need to be ruled out by the caller. The
+ * generateAnacondyRules task does so by scanning the whole game, while at runtime {@link #findPrivate(ClassNode)} only
+ * trusts private fields of classes that have no nestmates.</p>
+ * <p>Shared with the build-time analyzer, hence public.</p>
+ */
+public final class EffectivelyFinalFields {
+    private EffectivelyFinalFields() {}
+
+    /**
+     * @param fieldNames         the names of the fields proven to be effectively final
+     * @param constructorHelpers the name and descriptor of each constructor helper, such as {@code init()V}
+     */
+    public record Result(Set<String> fieldNames, Set<String> constructorHelpers) {
+        public boolean isConstructorHelper(MethodNode methodNode) {
+            return constructorHelpers.contains(methodNode.name + methodNode.desc);
+        }
+    }
+
+    /**
+     * @param mayBeWrittenElsewhere whether the given field may be written by another class, skipping it if so
+     * @param mayBeCalledElsewhere whether the given private method may be called by another class, such as a nestmate,
+     *                             in which case it isn't considered a constructor helper
+     */
+    public static Result find(
+            ClassNode classNode,
+            Predicate<FieldNode> mayBeWrittenElsewhere,
+            Predicate<MethodNode> mayBeCalledElsewhere
+    ) {
+        var analysis = new Analysis(classNode);
+        var helpers = analysis.findConstructorHelpers(mayBeCalledElsewhere);
+        var helperNames = helpers.stream()
+                .map(methodNode -> methodNode.name + methodNode.desc)
+                .collect(Collectors.toUnmodifiableSet());
+
+        var candidates = new HashSet<String>();
+        for (var fieldNode : classNode.fields) {
+            if ((fieldNode.access & (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_VOLATILE)) != 0) continue;
+            if (mayBeWrittenElsewhere.test(fieldNode)) continue;
+
+            candidates.add(fieldNode.name);
+        }
+        if (candidates.isEmpty()) return new Result(Set.of(), helperNames);
+
+        var writtenOnce = new HashSet<String>();
+        for (var methodNode : classNode.methods) {
+            var isConstructing = isConstructor(methodNode) || helpers.contains(methodNode);
+            for (var insn : methodNode.instructions) {
+                switch (insn) {
+                    case FieldInsnNode fieldInsn when fieldInsn.getOpcode() == Opcodes.PUTFIELD
+                            && fieldInsn.owner.equals(classNode.name)
+                            && candidates.contains(fieldInsn.name) -> {
+                        // the receiver is just below the value being written
+                        if (!isConstructing || !analysis.isOnThis(methodNode, insn, 1) || !writtenOnce.add(fieldInsn.name))
+                            candidates.remove(fieldInsn.name);
+                    }
+                    case LdcInsnNode ldcInsn when ldcInsn.cst instanceof Handle handle ->
+                            removeIfWritten(candidates, classNode.name, handle);
+                    case InvokeDynamicInsnNode indyInsn -> {
+                        for (var bsmArg : indyInsn.bsmArgs) {
+                            if (bsmArg instanceof Handle handle)
+                                removeIfWritten(candidates, classNode.name, handle);
+                        }
+                    }
+                    default -> {}
+                }
+            }
+        }
+
+        return new Result(Set.copyOf(candidates), helperNames);
+    }
+
+    /**
+     * Runtime variant of {@link #find(ClassNode, Predicate, Predicate)} that only considers private fields, as the
+     * transformer can't see writes from other classes. Classes that are part of a nest have no fields proven, as their
+     * nestmates can write to their private fields, but still have their constructor helpers found.
+     */
+    static Result findPrivate(ClassNode classNode) {
+        var isNested = classNode.nestHostClass != null
+                || (classNode.nestMembers != null && !classNode.nestMembers.isEmpty());
+
+        return find(
+                classNode,
+                fieldNode -> isNested || (fieldNode.access & Opcodes.ACC_PRIVATE) == 0,
+                methodNode -> false
+        );
+    }
+
+    private static void removeIfWritten(Set<String> candidates, String owner, Handle handle) {
+        if (handle.getTag() == Opcodes.H_PUTFIELD && handle.getOwner().equals(owner))
+            candidates.remove(handle.getName());
+    }
+
+    private static boolean isConstructor(MethodNode methodNode) {
+        return methodNode.name.equals(ConstantDescs.INIT_NAME);
+    }
+
+    /** Lazily computed source frames of the class' methods */
+    private record Analysis(ClassNode classNode, Map<MethodNode, Frame<SourceValue>[]> framesByMethod) {
+        Analysis(ClassNode classNode) {
+            this(classNode, new HashMap<>());
+        }
+
+        /**
+         * Finds the private instance methods that are only ever called on {@code this} from constructors or other
+         * such methods, making them effectively part of construction.
+         */
+        Set<MethodNode> findConstructorHelpers(Predicate<MethodNode> mayBeCalledElsewhere) {
+            var helpers = new HashSet<MethodNode>();
+            for (var methodNode : classNode.methods) {
+                if ((methodNode.access & Opcodes.ACC_PRIVATE) != 0
+                        && (methodNode.access & Opcodes.ACC_STATIC) == 0
+                        && !isConstructor(methodNode)
+                        && !mayBeCalledElsewhere.test(methodNode))
+                    helpers.add(methodNode);
+            }
+
+            // Narrow down until no remaining helper is called from outside construction
+            boolean changed = true;
+            while (changed && !helpers.isEmpty()) {
+                changed = false;
+                for (var caller : classNode.methods) {
+                    var isConstructing = isConstructor(caller) || helpers.contains(caller);
+                    for (var insn : caller.instructions) {
+                        var helper = switch (insn) {
+                            case MethodInsnNode methodInsn when methodInsn.owner.equals(classNode.name) -> {
+                                var callee = findHelper(helpers, methodInsn.name, methodInsn.desc);
+                                int argCount = Type.getArgumentCount(methodInsn.desc);
+                                yield callee != null && (!isConstructing || !isOnThis(caller, insn, argCount))
+                                        ? callee
+                                        : null;
+                            }
+                            // method references and lambdas can be called at any time
+                            case InvokeDynamicInsnNode indyInsn -> findReferencedHelper(helpers, indyInsn.bsmArgs);
+                            case LdcInsnNode ldcInsn -> findReferencedHelper(helpers, ldcInsn.cst);
+                            default -> null;
+                        };
+
+                        if (helper != null && helpers.remove(helper))
+                            changed = true;
+                    }
+                }
+            }
+
+            return helpers;
+        }
+
+        private @Nullable MethodNode findReferencedHelper(Set<MethodNode> helpers, Object... constants) {
+            for (var constant : constants) {
+                if (constant instanceof Handle handle && handle.getOwner().equals(classNode.name)) {
+                    var helper = findHelper(helpers, handle.getName(), handle.getDesc());
+                    if (helper != null) return helper;
+                }
+            }
+            return null;
+        }
+
+        private static @Nullable MethodNode findHelper(Set<MethodNode> helpers, String name, String desc) {
+            for (var helper : helpers) {
+                if (helper.name.equals(name) && helper.desc.equals(desc))
+                    return helper;
+            }
+            return null;
+        }
+
+        /**
+         * @param depth how far below the top of the operand stack the value to check is
+         * @return whether the value on the stack at the given instruction can only be {@code this}
+         */
+        boolean isOnThis(MethodNode methodNode, AbstractInsnNode insn, int depth) {
+            if ((methodNode.access & Opcodes.ACC_STATIC) != 0) return false;
+
+            if (!framesByMethod.containsKey(methodNode))
+                framesByMethod.put(methodNode, analyze(methodNode));
+
+            var frames = framesByMethod.get(methodNode);
+            if (frames == null) return false;
+
+            var frame = frames[methodNode.instructions.indexOf(insn)];
+            if (frame == null) return true; // unreachable
+
+            var value = frame.getStack(frame.getStackSize() - 1 - depth);
+            for (var source : value.insns) {
+                if (!(source instanceof VarInsnNode varInsn && varInsn.getOpcode() == Opcodes.ALOAD && varInsn.var == 0))
+                    return false;
+            }
+            return !value.insns.isEmpty();
+        }
+
+        private Frame<SourceValue> @Nullable [] analyze(MethodNode methodNode) {
+            // local 0 is only guaranteed to still be `this` if nothing else is ever stored in it
+            for (var insn : methodNode.instructions) {
+                if (insn instanceof VarInsnNode varInsn && varInsn.var == 0 && varInsn.getOpcode() == Opcodes.ASTORE)
+                    return null;
+            }
+
+            try {
+                return new Analyzer<>(new SourceInterpreter()).analyze(classNode.name, methodNode);
+            } catch (AnalyzerException e) {
+                return null;
+            }
+        }
+    }
+}
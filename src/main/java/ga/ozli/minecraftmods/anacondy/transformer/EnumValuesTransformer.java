@@ -0,0 +1,84 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Rewrites {@code INVOKESTATIC SomeEnum.values()} calls whose array is only ever read from, such as when looping over
+ * {@code Direction.values()}, to load a ConstantDynamic holding a single copy of the array instead, saving the clone
+ * made by every call.
+ * <p>Each call site is checked by {@link ReadOnlyArrays} as its class is loaded, so that the shared array can never be
+ * changed. The classes with such call sites move around between versions, so are left to the generateAnacondyRules
+ * task to find.</p>
+ *
+ * @param enumClasses the internal names of the enums whose values() calls to rewrite, in addition to those found by
+ *                    the generateAnacondyRules task
+ */
+record EnumValuesTransformer(Set<String> enumClasses) implements InsnRule {
+    EnumValuesTransformer {
+        var union = new HashSet<>(enumClasses);
+        union.addAll(GeneratedRules.INSTANCE.readOnlyValuesEnums());
+        enumClasses = Set.copyOf(union);
+    }
+
+    @Override
+    public Set<InsnKey> keys() {
+        return enumClasses.stream()
+                .map(className -> new InsnKey(Opcodes.INVOKESTATIC, className, "values", valuesDesc(className)))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        var readOnlyCalls = new HashMap<MethodNode, Set<MethodInsnNode>>();
+        return (methodNode, insns, insn) -> {
+            var calls = readOnlyCalls.computeIfAbsent(
+                    methodNode,
+                    m -> ReadOnlyArrays.find(classNode.name, m, this::isValuesCall)
+            );
+            if (!calls.contains(insn)) return false;
+
+            var methodInsn = (MethodInsnNode) insn;
+            var simpleName = methodInsn.owner.substring(methodInsn.owner.lastIndexOf('/') + 1).replace("$", "");
+            insns.set(new LdcInsnNode(new ConstantDynamic(
+                    Utils.camelCaseToScreamingSnakeCase(simpleName) + "_VALUES",
+                    Type.getReturnType(methodInsn.desc).getDescriptor(),
+                    AnacondyTransformers.HANDLE_BSM_INVOKE,
+                    new Handle(Opcodes.H_INVOKESTATIC, methodInsn.owner, methodInsn.name, methodInsn.desc, methodInsn.itf)
+            )));
+            AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+            Utils.recordRewrite(this, classNode.name, methodNode);
+            return true;
+        };
+    }
+
+    private boolean isValuesCall(MethodInsnNode methodInsn) {
+        return methodInsn.getOpcode() == Opcodes.INVOKESTATIC
+                && methodInsn.name.equals("values")
+                && enumClasses.contains(methodInsn.owner)
+                && methodInsn.desc.equals(valuesDesc(methodInsn.owner));
+    }
+
+    private static String valuesDesc(String enumClass) {
+        return "()[L" + enumClass + ';';
+    }
+
+    // Classes found by the generateAnacondyRules task are added to this list automatically
+    @Override
+    public @NotNull Set<Target> targets() {
+        return GeneratedRules.withGenerated(Set.of(), GeneratedRules.INSTANCE.enumValuesReaders());
+    }
+}
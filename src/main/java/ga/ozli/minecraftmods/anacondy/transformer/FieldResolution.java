@@ -0,0 +1,20 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+/**
+ * How a singleton's field reads are resolved to a constant.
+ */
+enum FieldResolution {
+    /**
+     * Resolve the field once via a chained CONDY. Resolution happens on first execution and can't be retried, so the
+     * singleton and the field need to be fully initialised by then.
+     */
+    CONDY,
+
+    /**
+     * Read the field live until the singleton owner's constructor has finished, then fold it to a constant on the
+     * first non-null read. Reads during initialisation, including those from other threads, never resolve anything,
+     * so this is safe for classes that are loaded and used while the singleton is still being constructed.
+     * @see SingletonInitTracker
+     */
+    AFTER_SINGLETON_INIT
+}
@@ -0,0 +1,256 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+
+/**
+ * The rule set generated at build time by the {@code generateAnacondyRules} Gradle task, which is unioned with the
+ * hand-written target lists of the transformers. Malformed rules are skipped rather than failing the launch, as the
+ * hand-written lists still work on their own. A missing or empty rule file is logged as an error, as it disables most
+ * of the transformers.
+ */
+record GeneratedRules(
+        Set<Singleton> singletons,
+        Set<StaticGetter> lazyStaticGetters,
+        Set<FieldRef> effectivelyFinalFields,
+        Set<String> recordCandidates,
+        Map<String, String> nonRecordReasons,
+        Set<String> singletonTypes,
+        Set<FieldRef> singletonCopies,
+        Set<String> fieldCopyHolders,
+        Set<String> enumValuesReaders,
+        Set<String> readOnlyValuesEnums,
+        Set<SwitchMap> switchMaps,
+        Set<String> switchMapReaders,
+        Set<String> singletonLambdaHolders,
+        Set<String> defaultStateReaders,
+        Set<String> registryConstantReaders,
+        Set<String> identifierLiteralReaders
+) {
+    private static final String RESOURCE = "/anacondy/generated-rules.txt";
+
+    static final GeneratedRules INSTANCE = load();
+
+    /** A class holding its own instance in a static field, with a static getter that returns it */
+    record Singleton(String className, String fieldName, String getterName, String getterDesc) {
+        Target getterTarget() {
+            return Target.targetMethod(className, getterName, getterDesc);
+        }
+    }
+
+    /**
+     * A static getter of a field that isn't effectively final, but is only ever set to non-null values from inside its
+     * own class
+     */
+    record StaticGetter(String className, String fieldName, String getterName, String getterDesc) {
+        Target getterTarget() {
+            return Target.targetMethod(className, getterName, getterDesc);
+        }
+    }
+
+    /**
+     * A field. In {@link #effectivelyFinalFields}, a non-final field only written during construction. In
+     * {@link #singletonCopies}, an (effectively) final instance field holding a singleton, as referenced by instructions.
+     */
+    record FieldRef(String owner, String name, String desc, boolean isStatic) {}
+
+    /**
+     * A {@code $SwitchMap$} array made by javac for switches on an enum from another class, mapping each of the enum's
+     * ordinals to the key of its case in the switch
+     * @param constantsByKey the enum constant each switch key stands for
+     * @param ordinals the ordinal of each of those constants when the game was scanned
+     */
+    record SwitchMap(
+            String holder,
+            String fieldName,
+            String enumClass,
+            Map<Integer, String> constantsByKey,
+            Map<String, Integer> ordinals
+    ) {
+        /**
+         * @param mapping comma-separated {@code key=CONSTANT:ordinal} entries
+         */
+        static SwitchMap parse(String holder, String fieldName, String enumClass, String mapping) {
+            var constantsByKey = new HashMap<Integer, String>();
+            var ordinals = new HashMap<String, Integer>();
+            for (var entry : mapping.split(",")) {
+                int equals = entry.indexOf('=');
+                int colon = entry.lastIndexOf(':');
+                var constant = entry.substring(equals + 1, colon);
+                constantsByKey.put(Integer.parseInt(entry.substring(0, equals)), constant);
+                ordinals.put(constant, Integer.parseInt(entry.substring(colon + 1)));
+            }
+            return new SwitchMap(holder, fieldName, enumClass, Map.copyOf(constantsByKey), Map.copyOf(ordinals));
+        }
+    }
+
+    private static GeneratedRules load() {
+        var singletons = new HashSet<Singleton>();
+        var lazyStaticGetters = new HashSet<StaticGetter>();
+        var effectivelyFinalFields = new HashSet<FieldRef>();
+        var recordCandidates = new HashSet<String>();
+        var nonRecordReasons = new HashMap<String, String>();
+        var singletonTypes = new HashSet<String>();
+        var singletonCopies = new HashSet<FieldRef>();
+        var fieldCopyHolders = new HashSet<String>();
+        var enumValuesReaders = new HashSet<String>();
+        var readOnlyValuesEnums = new HashSet<String>();
+        var switchMaps = new HashSet<SwitchMap>();
+        var switchMapReaders = new HashSet<String>();
+        var singletonLambdaHolders = new HashSet<String>();
+        var defaultStateReaders = new HashSet<String>();
+        var registryConstantReaders = new HashSet<String>();
+        var identifierLiteralReaders = new HashSet<String>();
+
+        var in = GeneratedRules.class.getResourceAsStream(RESOURCE);
+        if (in == null) {
+            AnacondyTransformers.LOGGER.error(
+                    "Missing {} - most transformers will only apply to their few built-in targets. This is a " +
+                    "packaging bug, as the build generates it into every jar", RESOURCE
+            );
+            return empty();
+        }
+
+        try (var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+
+                var parts = line.split(" ");
+                if (parts.length != expectedParts(parts[0])) {
+                    AnacondyTransformers.LOGGER.warn("Skipping unknown generated rule: {}", line);
+                    continue;
+                }
+
+                switch (parts[0]) {
+                    case "singleton" -> singletons.add(new Singleton(parts[1], parts[2], parts[3], parts[4]));
+                    case "lazy-static" -> lazyStaticGetters.add(new StaticGetter(parts[1], parts[2], parts[3], parts[4]));
+                    case "effectively-final" ->
+                            effectivelyFinalFields.add(new FieldRef(parts[1], parts[2], parts[3], parts[4].equals("static")));
+                    case "record" -> recordCandidates.add(parts[1]);
+                    case "not-record" -> nonRecordReasons.put(parts[1], parts[2]);
+                    case "singleton-type" -> singletonTypes.add(parts[1]);
+                    case "singleton-copy" -> singletonCopies.add(new FieldRef(parts[1], parts[2], parts[3], false));
+                    case "field-copy-holder" -> fieldCopyHolders.add(parts[1]);
+                    case "enum-values-reader" -> {
+                        enumValuesReaders.add(parts[1]);
+                        readOnlyValuesEnums.add(parts[2]);
+                    }
+                    case "switch-map" -> {
+                        try {
+                            switchMaps.add(SwitchMap.parse(parts[1], parts[2], parts[3], parts[4]));
+                        } catch (RuntimeException e) {
+                            AnacondyTransformers.LOGGER.warn("Skipping malformed generated rule: {}", line);
+                        }
+                    }
+                    case "switch-map-reader" -> switchMapReaders.add(parts[1]);
+                    case "singleton-lambda-holder" -> singletonLambdaHolders.add(parts[1]);
+                    case "default-state-reader" -> defaultStateReaders.add(parts[1]);
+                    case "registry-constant-reader" -> registryConstantReaders.add(parts[1]);
+                    case "identifier-literal-reader" -> identifierLiteralReaders.add(parts[1]);
+                }
+            }
+        } catch (IOException e) {
+            AnacondyTransformers.LOGGER.warn("Failed to read generated rules, only using the built-in target lists", e);
+            return empty();
+        }
+
+        if (singletons.isEmpty() && effectivelyFinalFields.isEmpty() && recordCandidates.isEmpty())
+            AnacondyTransformers.LOGGER.error("{} has no rules in it, regenerate it with the generateAnacondyRules task", RESOURCE);
+
+        AnacondyTransformers.LOGGER.info(
+                "Loaded generated rules: {} singletons, {} lazy static getters, {} effectively final fields, {} record candidates, {} classes that can't be records, {} singleton types, {} field copy holders, {} enum values readers, {} switch maps, {} singleton lambda holders, {} default state readers, {} registry constant readers, {} identifier literal readers",
+                singletons.size(), lazyStaticGetters.size(), effectivelyFinalFields.size(), recordCandidates.size(),
+                nonRecordReasons.size(), singletonTypes.size(), fieldCopyHolders.size(), enumValuesReaders.size(),
+                switchMaps.size(), singletonLambdaHolders.size(), defaultStateReaders.size(),
+                registryConstantReaders.size(), identifierLiteralReaders.size()
+        );
+
+        return new GeneratedRules(
+                Set.copyOf(singletons),
+                Set.copyOf(lazyStaticGetters),
+                Set.copyOf(effectivelyFinalFields),
+                Set.copyOf(recordCandidates),
+                Map.copyOf(nonRecordReasons),
+                Set.copyOf(singletonTypes),
+                Set.copyOf(singletonCopies),
+                Set.copyOf(fieldCopyHolders),
+                Set.copyOf(enumValuesReaders),
+                Set.copyOf(readOnlyValuesEnums),
+                Set.copyOf(switchMaps),
+                Set.copyOf(switchMapReaders),
+                Set.copyOf(singletonLambdaHolders),
+                Set.copyOf(defaultStateReaders),
+                Set.copyOf(registryConstantReaders),
+                Set.copyOf(identifierLiteralReaders)
+        );
+    }
+
+    private static GeneratedRules empty() {
+        return new GeneratedRules(
+                Set.of(), Set.of(), Set.of(), Set.of(), Map.of(), Set.of(), Set.of(), Set.of(), Set.of(), Set.of(),
+                Set.of(), Set.of(), Set.of(), Set.of(), Set.of(), Set.of()
+        );
+    }
+
+    private static int expectedParts(String ruleKind) {
+        return switch (ruleKind) {
+            case "singleton", "lazy-static", "effectively-final", "switch-map" -> 5;
+            case "singleton-copy" -> 4;
+            case "not-record", "enum-values-reader" -> 3;
+            case "record", "singleton-type", "field-copy-holder", "switch-map-reader", "singleton-lambda-holder",
+                 "default-state-reader", "registry-constant-reader",
+                 "identifier-literal-reader" -> 2;
+            default -> -1;
+        };
+    }
+
+    /**
+     * @return the names of the effectively final fields declared by the given class
+     */
+    Set<String> effectivelyFinalFieldNames(String owner, boolean isStatic) {
+        return effectivelyFinalFields.stream()
+                .filter(field -> field.owner.equals(owner) && field.isStatic == isStatic)
+                .map(FieldRef::name)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    boolean isSingletonCopy(String owner, String name, String desc) {
+        return singletonCopies.contains(new FieldRef(owner, name, desc, false));
+    }
+
+    /**
+     * @return the classes declaring at least one effectively final static field
+     */
+    Set<String> effectivelyFinalStaticOwners() {
+        return effectivelyFinalFields.stream()
+                .filter(FieldRef::isStatic)
+                .map(FieldRef::owner)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * @return the union of the given hand-written targets and class targets for the given generated class names
+     */
+    static Set<Target> withGenerated(Set<Target> targets, Set<String> generatedClassNames) {
+        if (generatedClassNames.isEmpty())
+            return targets;
+
+        var union = new HashSet<>(targets);
+        for (var className : generatedClassNames)
+            union.add(targetClass(className));
+
+        return Set.copyOf(union);
+    }
+}
@@ -0,0 +1,66 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.NonNull;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.lang.constant.ConstantDescs;
+import java.util.Set;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+
+/**
+ * Passes every {@code Identifier} made inside its own class through
+ * {@code ga.ozli.minecraftmods.anacondy.IdentifierInterner#intern}, so that equal identifiers share one instance.
+ * <p>{@code Identifier}'s constructor is private, so hooking each {@code new Identifier(...)} inside the class covers
+ * every factory, including those used when decoding NBT, packets and datapacks, and interns each instance exactly once.
+ * </p>
+ * <p>Opt-in with {@code -Danacondy.internIdentifiers=true}, as it trades a table lookup on every new identifier for
+ * the heap saved, which is only worth it on large servers.</p>
+ */
+record IdentifierInternTransformer() implements Transformer<ClassNode>, ITransformer<ClassNode> {
+    static final boolean ENABLED = Boolean.getBoolean("anacondy.internIdentifiers");
+
+    @Override
+    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
+        for (var methodNode : classNode.methods) {
+            // constructors chaining to one another don't make a new instance
+            if (methodNode.name.equals(ConstantDescs.INIT_NAME)) continue;
+
+            for (var insn : methodNode.instructions.toArray()) {
+                if (!(insn instanceof MethodInsnNode methodInsn
+                        && methodInsn.getOpcode() == Opcodes.INVOKESPECIAL
+                        && methodInsn.owner.equals(classNode.name)
+                        && methodInsn.name.equals(ConstantDescs.INIT_NAME)))
+                    continue;
+
+                // `identifier -> identifier, namespace, path -> interned`
+                var intern = new InsnList();
+                intern.add(new InsnNode(Opcodes.DUP));
+                intern.add(new InsnNode(Opcodes.DUP));
+                intern.add(new FieldInsnNode(Opcodes.GETFIELD, classNode.name, "namespace", "Ljava/lang/String;"));
+                intern.add(new InsnNode(Opcodes.SWAP));
+                intern.add(new FieldInsnNode(Opcodes.GETFIELD, classNode.name, "path", "Ljava/lang/String;"));
+                intern.add(new MethodInsnNode(
+                        Opcodes.INVOKESTATIC,
+                        "ga/ozli/minecraftmods/anacondy/IdentifierInterner",
+                        "intern",
+                        "(Ljava/lang/Object;Ljava/lang/String;Ljava/lang/String;)Ljava/lang/Object;",
+                        false
+                ));
+                intern.add(new TypeInsnNode(Opcodes.CHECKCAST, classNode.name));
+                methodNode.instructions.insert(methodInsn, intern);
+            }
+        }
+
+        return classNode;
+    }
+
+    @Override
+    public @NotNull Set<Target> targets() {
+        return Set.of(targetClass(IdentifierLiterals.CLASS_NAME));
+    }
+}
@@ -0,0 +1,52 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Rewrites {@code Identifier} factory calls made with string literals, such as
+ * {@code Identifier.fromNamespaceAndPath("minecraft", "stone")} or {@code Identifier.parse("minecraft:stone")}, to
+ * load a ConstantDynamic of the identifier instead, saving the validation and allocation on every call.
+ * <p>Calls with literals that wouldn't make a valid identifier are left alone by {@link IdentifierLiterals}, so that
+ * they keep throwing their original exception.</p>
+ * <p>The classes making such calls move around between versions, so are left to the generateAnacondyRules task to
+ * find.</p>
+ */
+record IdentifierLiteralTransformer() implements InsnRule {
+    @Override
+    public Set<InsnKey> keys() {
+        return IdentifierLiterals.FACTORY_NAMES.stream()
+                .map(name -> InsnKey.of(Opcodes.INVOKESTATIC, IdentifierLiterals.CLASS_NAME, name))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        return (methodNode, insns, insn) -> {
+            var factoryInsn = (MethodInsnNode) insn;
+            var literals = IdentifierLiterals.find(factoryInsn);
+            if (literals == null) return false;
+
+            for (var literal : literals)
+                methodNode.instructions.remove(literal);
+
+            insns.set(new LdcInsnNode(IdentifierLiterals.toConstant(factoryInsn, literals)));
+            AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+            Utils.recordRewrite(this, classNode.name, methodNode);
+            return true;
+        };
+    }
+
+    // Classes found by the generateAnacondyRules task are added to this list automatically
+    @Override
+    public @NotNull Set<Target> targets() {
+        return GeneratedRules.withGenerated(Set.of(), GeneratedRules.INSTANCE.identifierLiteralReaders());
+    }
+}
@@ -0,0 +1,117 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds {@code Identifier} factory calls made with string literals, such as
+ * {@code Identifier.fromNamespaceAndPath("minecraft", "stone")}, so that they can be replaced with a constant.
+ * <p>The literals are checked against {@code Identifier}'s own rules, erring on the side of rejecting them, so that
+ * calls that would throw are left alone and keep throwing the same exception at runtime. Folding them instead would
+ * turn that exception into a {@link BootstrapMethodError}.</p>
+ * <p>Shared with the build-time analyzer, hence public.</p>
+ */
+public final class IdentifierLiterals {
+    private IdentifierLiterals() {}
+
+    public static final String CLASS_NAME = "net/minecraft/resources/Identifier";
+    static final String DESC = 'L' + CLASS_NAME + ';';
+
+    public static final Set<String> FACTORY_NAMES = Set.of("fromNamespaceAndPath", "withDefaultNamespace", "parse");
+
+    /**
+     * @return the instructions loading the literals passed to the given factory call, in order, or null if it isn't a
+     * factory call, any of its arguments isn't a literal, or the literals don't make a valid identifier
+     */
+    public static @Nullable List<LdcInsnNode> find(MethodInsnNode factoryInsn) {
+        if (factoryInsn.getOpcode() != Opcodes.INVOKESTATIC
+                || !factoryInsn.owner.equals(CLASS_NAME)
+                || !FACTORY_NAMES.contains(factoryInsn.name)
+                || !factoryInsn.desc.endsWith(")" + DESC))
+            return null;
+
+        var argumentTypes = Type.getArgumentTypes(factoryInsn.desc);
+        var literals = new ArrayList<LdcInsnNode>(argumentTypes.length);
+        AbstractInsnNode insn = factoryInsn;
+        for (var argumentType : argumentTypes) {
+            if (argumentType.getSort() != Type.OBJECT || !argumentType.getInternalName().equals("java/lang/String"))
+                return null;
+
+            // skip line numbers but not labels, as those may be jumped to
+            insn = insn.getPrevious();
+            while (insn instanceof LineNumberNode)
+                insn = insn.getPrevious();
+
+            if (!(insn instanceof LdcInsnNode ldcInsn && ldcInsn.cst instanceof String))
+                return null;
+
+            literals.addFirst(ldcInsn);
+        }
+
+        var strings = literals.stream().map(ldcInsn -> (String) ldcInsn.cst).toList();
+        return isValid(factoryInsn.name, strings) ? literals : null;
+    }
+
+    /**
+     * @return a ConstantDynamic making the same identifier as the given factory call
+     */
+    static ConstantDynamic toConstant(MethodInsnNode factoryInsn, List<LdcInsnNode> literals) {
+        var bsmArgs = new Object[literals.size() + 1];
+        bsmArgs[0] = new Handle(Opcodes.H_INVOKESTATIC, factoryInsn.owner, factoryInsn.name, factoryInsn.desc, false);
+        for (int i = 0; i < literals.size(); i++)
+            bsmArgs[i + 1] = literals.get(i).cst;
+
+        return new ConstantDynamic("IDENTIFIER", DESC, AnacondyTransformers.HANDLE_BSM_INVOKE, bsmArgs);
+    }
+
+    private static boolean isValid(String factoryName, List<String> literals) {
+        return switch (factoryName) {
+            case "fromNamespaceAndPath" -> literals.size() == 2
+                    && isValidNamespace(literals.get(0)) && isValidPath(literals.get(1));
+            case "withDefaultNamespace" -> literals.size() == 1 && isValidPath(literals.getFirst());
+            case "parse" -> {
+                if (literals.size() != 1) yield false;
+
+                var literal = literals.getFirst();
+                int colon = literal.indexOf(':');
+                yield colon < 0
+                        ? isValidPath(literal)
+                        : isValidNamespace(literal.substring(0, colon)) && isValidPath(literal.substring(colon + 1));
+            }
+            default -> false;
+        };
+    }
+
+    private static boolean isValidNamespace(String namespace) {
+        if (namespace.isEmpty()) return false;
+
+        for (int i = 0; i < namespace.length(); i++) {
+            char c = namespace.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_' || c == '-' || c == '.'))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isValidPath(String path) {
+        if (path.isEmpty()) return false;
+
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_' || c == '-' || c == '.' || c == '/'))
+                return false;
+        }
+        return true;
+    }
+}
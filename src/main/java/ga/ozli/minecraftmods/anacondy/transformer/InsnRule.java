@@ -0,0 +1,59 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ListIterator;
+import java.util.Set;
+
+/**
+ * A rewrite of individual field, method or invokedynamic instructions, applied by the {@link RewriteEngine}. Rules only see the
+ * instructions matching their {@link #keys()} inside their {@link #targets()}.
+ */
+sealed interface InsnRule extends Rule
+        permits DebugEntrySystemSpecsTransformer, DefaultStateTransformer, EnumValuesTransformer, IdentifierLiteralTransformer, RegistryConstantTransformer, SessionConstantTransformer, SingletonAccessedFieldsTransformer, SingletonAccessedForeignFieldsTransformer, SingletonFieldCopiesTransformer, SingletonLambdaTransformer, StaticFieldGetToCondy, StaticFieldGetToIndy.ConstantOnceNonNull, StaticFieldGetToIndy.ConstantOnceNonDefault, StaticFieldGetToIndy.MostlyConstant, SwitchMapTransformer {
+    /**
+     * @return the field, method and invokedynamic instructions this rule may rewrite
+     */
+    Set<InsnKey> keys();
+
+    /**
+     * Prepares this rule for the given class, e.g. to gather the class' final fields.
+     * @return the rewriter to use within the class, or null to skip the class
+     */
+    @Nullable Rewriter bind(ClassNode classNode);
+
+    @FunctionalInterface
+    interface Rewriter {
+        /**
+         * @param insns positioned just after {@code insn}, so that {@link ListIterator#set(Object)} replaces it
+         * @return whether the instruction was handled, stopping later rules from seeing it
+         */
+        boolean rewrite(MethodNode methodNode, ListIterator<AbstractInsnNode> insns, AbstractInsnNode insn);
+    }
+
+    /**
+     * Identifies the instructions a rule is interested in. Null parts are wildcards, but at least the owner or the
+     * descriptor must be given to keep lookups cheap. For invokedynamic instructions, the owner and name are those of
+     * the bootstrap method, while the descriptor is the call site's.
+     * @param opcode the instruction's opcode, or {@link #ANY_OPCODE}
+     */
+    record InsnKey(int opcode, @Nullable String owner, @Nullable String name, @Nullable String desc) {
+        static final int ANY_OPCODE = -1;
+
+        public InsnKey {
+            if (owner == null && desc == null)
+                throw new IllegalArgumentException("InsnKey needs at least an owner or a descriptor");
+        }
+
+        static InsnKey of(int opcode, String owner, String name) {
+            return new InsnKey(opcode, owner, name, null);
+        }
+
+        boolean matches(int opcode, String desc) {
+            return (this.opcode == ANY_OPCODE || this.opcode == opcode) && (this.desc == null || this.desc.equals(desc));
+        }
+    }
+}
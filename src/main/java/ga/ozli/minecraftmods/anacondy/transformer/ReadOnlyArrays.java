@@ -0,0 +1,155 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Escape analysis for arrays returned by method calls, finding those that are only ever read from within the calling
+ * method, so that the calls can share a single array rather than each returning a fresh one.
+ * <p>The array is followed through {@code DUP}s and local variables. Reading its length or elements, null checks and
+ * reference comparisons are fine, while any other use, such as writing to it, passing it to another method, returning
+ * it or storing it in a field, counts as an escape.</p>
+ * <p>Shared with the build-time analyzer, hence public.</p>
+ */
+public final class ReadOnlyArrays {
+    private ReadOnlyArrays() {}
+
+    /**
+     * @param isCandidate whether the given call returns an array that may be shared
+     * @return the candidate calls in the method whose arrays are only ever read from
+     */
+    public static Set<MethodInsnNode> find(String owner, MethodNode methodNode, Predicate<MethodInsnNode> isCandidate) {
+        var calls = new ArrayList<MethodInsnNode>();
+        for (var insn : methodNode.instructions) {
+            if (insn instanceof MethodInsnNode methodInsn && isCandidate.test(methodInsn))
+                calls.add(methodInsn);
+        }
+        if (calls.isEmpty()) return Set.of();
+
+        Frame<SourceValue>[] frames;
+        try {
+            frames = new Analyzer<>(new SourceInterpreter()).analyze(owner, methodNode);
+        } catch (AnalyzerException e) {
+            return Set.of();
+        }
+
+        var readOnly = new HashSet<MethodInsnNode>();
+        for (var call : calls) {
+            if (isOnlyRead(methodNode, frames, call))
+                readOnly.add(call);
+        }
+        return Set.copyOf(readOnly);
+    }
+
+    private static boolean isOnlyRead(MethodNode methodNode, Frame<SourceValue>[] frames, MethodInsnNode call) {
+        var insns = methodNode.instructions;
+
+        // Find every instruction that copies the array, until no more are found
+        var aliases = new HashSet<AbstractInsnNode>();
+        aliases.add(call);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < insns.size(); i++) {
+                var frame = frames[i];
+                if (frame == null) continue; // unreachable
+
+                var insn = insns.get(i);
+                var copies = switch (insn.getOpcode()) {
+                    case Opcodes.ALOAD -> isAlias(frame.getLocal(((VarInsnNode) insn).var), aliases);
+                    case Opcodes.ASTORE, Opcodes.DUP -> isAlias(topOfStack(frame, 0), aliases);
+                    default -> false;
+                };
+
+                if (copies && aliases.add(insn))
+                    changed = true;
+            }
+        }
+
+        // Then check that every instruction taking the array or one of its copies only reads from it
+        for (int i = 0; i < insns.size(); i++) {
+            var frame = frames[i];
+            if (frame == null) continue;
+
+            var insn = insns.get(i);
+            int consumed = Math.min(consumedValues(insn), frame.getStackSize());
+            for (int depth = 0; depth < consumed; depth++) {
+                if (isAlias(topOfStack(frame, depth), aliases) && !isRead(insn.getOpcode(), depth))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isAlias(SourceValue value, Set<AbstractInsnNode> aliases) {
+        for (var source : value.insns) {
+            if (aliases.contains(source))
+                return true;
+        }
+        return false;
+    }
+
+    private static SourceValue topOfStack(Frame<SourceValue> frame, int depth) {
+        return frame.getStack(frame.getStackSize() - 1 - depth);
+    }
+
+    /**
+     * @param depth how far below the top of the operand stack the array is
+     * @return whether the instruction leaves the array untouched and unshared
+     */
+    private static boolean isRead(int opcode, int depth) {
+        return switch (opcode) {
+            case Opcodes.ARRAYLENGTH, Opcodes.ASTORE, Opcodes.DUP, Opcodes.POP, Opcodes.IFNULL, Opcodes.IFNONNULL,
+                 Opcodes.INSTANCEOF -> depth == 0;
+            case Opcodes.AALOAD -> depth == 1;
+            case Opcodes.IF_ACMPEQ, Opcodes.IF_ACMPNE -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return how many values the instruction takes off the operand stack, erring on the side of too many
+     */
+    private static int consumedValues(AbstractInsnNode insn) {
+        return switch (insn) {
+            case MethodInsnNode methodInsn ->
+                    Type.getArgumentCount(methodInsn.desc) + (methodInsn.getOpcode() == Opcodes.INVOKESTATIC ? 0 : 1);
+            case InvokeDynamicInsnNode indyInsn -> Type.getArgumentCount(indyInsn.desc);
+            case FieldInsnNode fieldInsn -> switch (fieldInsn.getOpcode()) {
+                case Opcodes.PUTFIELD -> 2;
+                case Opcodes.PUTSTATIC, Opcodes.GETFIELD -> 1;
+                default -> 0;
+            };
+            case MultiANewArrayInsnNode multiANewArrayInsn -> multiANewArrayInsn.dims;
+            default -> switch (insn.getOpcode()) {
+                case Opcodes.DUP2_X2 -> 4;
+                case Opcodes.AASTORE, Opcodes.DUP_X2, Opcodes.DUP2_X1 -> 3;
+                case Opcodes.AALOAD, Opcodes.IF_ACMPEQ, Opcodes.IF_ACMPNE, Opcodes.SWAP, Opcodes.DUP_X1, Opcodes.DUP2,
+                     Opcodes.POP2 -> 2;
+                case Opcodes.ARRAYLENGTH, Opcodes.ASTORE, Opcodes.DUP, Opcodes.POP, Opcodes.IFNULL, Opcodes.IFNONNULL,
+                     Opcodes.ARETURN, Opcodes.ATHROW, Opcodes.MONITORENTER, Opcodes.MONITOREXIT, Opcodes.CHECKCAST,
+                     Opcodes.INSTANCEOF -> 1;
+                // the remaining instructions only ever take primitives, so can't take the array
+                default -> 0;
+            };
+        };
+    }
+}
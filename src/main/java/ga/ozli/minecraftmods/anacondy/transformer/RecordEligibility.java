@@ -0,0 +1,58 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Pre-flight checks for {@link ClassToRecordTransformer}, so that classes it can't safely convert are skipped with a
+ * reason instead of failing to load.
+ * <p>{@link #check(ClassNode)} only looks at the class itself. Whether the class is subclassed, has its fields
+ * accessed reflectively or with {@code Unsafe} (which records don't allow writes through), or is relied upon for its
+ * identity can only be seen by scanning the whole game, so the generateAnacondyRules task records those as
+ * {@code not-record} rules instead.</p>
+ * <p>Shared with the build-time analyzer, hence public.</p>
+ */
+public final class RecordEligibility {
+    private RecordEligibility() {}
+
+    private static final int NON_CLASS_ACCESS = Opcodes.ACC_INTERFACE | Opcodes.ACC_ANNOTATION | Opcodes.ACC_ENUM
+            | Opcodes.ACC_MODULE;
+
+    /**
+     * @return why the given class can't be converted to a record, or null if nothing in the class itself prevents it
+     */
+    public static @Nullable String check(ClassNode classNode) {
+        if ((classNode.access & Opcodes.ACC_RECORD) != 0)
+            return "already a record";
+
+        if ((classNode.access & NON_CLASS_ACCESS) != 0)
+            return "not a plain class";
+
+        if ((classNode.access & Opcodes.ACC_ABSTRACT) != 0)
+            return "abstract";
+
+        if (!"java/lang/Object".equals(classNode.superName))
+            return "already has a superclass: " + classNode.superName;
+
+        if (classNode.fields.stream().allMatch(fieldNode -> (fieldNode.access & Opcodes.ACC_STATIC) != 0))
+            return "has no instance fields";
+
+        // Record fields are trusted to be final, so are constant folded by the JIT and can't be written reflectively
+        for (var fieldNode : classNode.fields) {
+            if ((fieldNode.access & (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL)) == 0)
+                return "has a non-final instance field: " + fieldNode.name;
+        }
+
+        // Records are serialised through their canonical constructor, ignoring any custom serialisation methods
+        if (classNode.interfaces.contains("java/io/Serializable"))
+            return "serializable";
+
+        for (var methodNode : classNode.methods) {
+            if ((methodNode.access & (Opcodes.ACC_SYNCHRONIZED | Opcodes.ACC_STATIC)) == Opcodes.ACC_SYNCHRONIZED)
+                return "synchronises on its own instances in " + methodNode.name + methodNode.desc;
+        }
+
+        return null;
+    }
+}
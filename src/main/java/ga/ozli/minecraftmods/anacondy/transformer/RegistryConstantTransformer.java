@@ -0,0 +1,221 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+
+/**
+ * Rewrites lookups of constant keys in the built-in registries, such as
+ * {@code BuiltInRegistries.BLOCK.getValue(Identifier.withDefaultNamespace("stone"))} or
+ * {@code BuiltInRegistries.ITEM.getValue(SOME_KEY)}, and {@code value()} calls on static {@code Holder} constants, such
+ * as {@code MobEffects.SPEED.value()}, from a hash lookup or indirection on every call to an invokedynamic that folds
+ * to the result.
+ * <p>Registries being frozen and unfrozen are tracked by {@link RegistryFreezeTracker}, and tag rebinds through
+ * {@code MappedRegistry}, which is always transformed, so that lookups go through as usual until their registry is
+ * frozen and are relinked whenever a registry is unfrozen (as Forge does when syncing with a server) or has its tags
+ * rebound on datapack reload.</p>
+ * <p>Keys held in static fields are only folded if the field turns out to be final when the call site is linked, and
+ * are otherwise read on every call as before. Lookups in registries that aren't held in static fields, such as the data-driven ones reached through a
+ * {@code RegistryAccess}, have no constant receiver so are left alone.</p>
+ */
+record RegistryConstantTransformer() implements InsnRule {
+    private static final String BUILT_IN_REGISTRIES_CLASS_NAME = "net/minecraft/core/registries/BuiltInRegistries";
+    private static final String MAPPED_REGISTRY_CLASS_NAME = "net/minecraft/core/MappedRegistry";
+    private static final String RESOURCE_KEY_DESC = "Lnet/minecraft/resources/ResourceKey;";
+    private static final Set<String> HOLDER_DESCS = Set.of(
+            "Lnet/minecraft/core/Holder;",
+            "Lnet/minecraft/core/Holder$Reference;"
+    );
+
+    private static final Set<String> REGISTRY_CLASS_NAMES = Set.of(
+            "net/minecraft/core/Registry",
+            "net/minecraft/core/DefaultedRegistry"
+    );
+    private static final Set<String> LOOKUP_METHOD_NAMES = Set.of("getValue", "getValueOrThrow", "getOrThrow");
+
+    private static final Handle HANDLE_BSM_REGISTRY_CONSTANT = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+            "registryConstant",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodHandle;Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
+    private static final Handle HANDLE_BSM_HOLDER_VALUE_CONSTANT = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+            "holderValueConstant",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
+    @Override
+    public Set<InsnKey> keys() {
+        var keys = new HashSet<InsnKey>();
+        for (var registryClass : REGISTRY_CLASS_NAMES) {
+            for (var methodName : LOOKUP_METHOD_NAMES)
+                keys.add(InsnKey.of(Opcodes.INVOKEINTERFACE, registryClass, methodName));
+        }
+        keys.add(new InsnKey(Opcodes.INVOKEINTERFACE, "net/minecraft/core/Holder", "value", "()Ljava/lang/Object;"));
+        keys.add(new InsnKey(Opcodes.INVOKEVIRTUAL, "net/minecraft/core/Holder$Reference", "value", "()Ljava/lang/Object;"));
+
+        keys.add(InsnKey.of(Opcodes.PUTFIELD, MAPPED_REGISTRY_CLASS_NAME, "allTags"));
+        return keys;
+    }
+
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        return (methodNode, insns, insn) -> switch (insn) {
+            case FieldInsnNode fieldInsn -> {
+                insns.add(new MethodInsnNode(
+                        Opcodes.INVOKESTATIC,
+                        "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+                        "invalidateRegistryConstants",
+                        "()V",
+                        false
+                ));
+                yield true;
+            }
+            case MethodInsnNode methodInsn when methodInsn.name.equals("value") ->
+                    rewriteHolderValue(classNode, methodNode, insns, methodInsn);
+            case MethodInsnNode methodInsn -> rewriteRegistryLookup(classNode, methodNode, insns, methodInsn);
+            default -> false;
+        };
+    }
+
+    /**
+     * Expects {@code GETSTATIC holder; INVOKEINTERFACE Holder.value()}
+     */
+    private boolean rewriteHolderValue(
+            ClassNode classNode, MethodNode methodNode, ListIterator<AbstractInsnNode> insns,
+            MethodInsnNode methodInsn
+    ) {
+        if (!(previousInsn(methodInsn) instanceof FieldInsnNode holderInsn
+                && holderInsn.getOpcode() == Opcodes.GETSTATIC
+                && HOLDER_DESCS.contains(holderInsn.desc)))
+            return false;
+
+        methodNode.instructions.remove(holderInsn);
+        insns.set(new InvokeDynamicInsnNode(
+                holderInsn.name,
+                Type.getMethodDescriptor(Type.getReturnType(methodInsn.desc)),
+                HANDLE_BSM_HOLDER_VALUE_CONSTANT,
+                new Handle(Opcodes.H_GETSTATIC, holderInsn.owner, holderInsn.name, holderInsn.desc, false),
+                new Handle(
+                        methodInsn.itf ? Opcodes.H_INVOKEINTERFACE : Opcodes.H_INVOKEVIRTUAL,
+                        methodInsn.owner, methodInsn.name, methodInsn.desc, methodInsn.itf
+                )
+        ));
+        AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+        Utils.recordRewrite(this, classNode.name, methodNode);
+        return true;
+    }
+
+    /**
+     * Expects {@code GETSTATIC BuiltInRegistries.X; <constant key>; INVOKEINTERFACE Registry.getValue(key)}
+     */
+    private boolean rewriteRegistryLookup(
+            ClassNode classNode, MethodNode methodNode, ListIterator<AbstractInsnNode> insns,
+            MethodInsnNode methodInsn
+    ) {
+        var argumentTypes = Type.getArgumentTypes(methodInsn.desc);
+        if (argumentTypes.length != 1) return false;
+
+        var keyInsns = new ArrayList<AbstractInsnNode>();
+        var key = constantKey(methodInsn, keyInsns);
+        if (key == null) return false;
+
+        if (!(previousInsn(keyInsns.getFirst()) instanceof FieldInsnNode registryInsn
+                && registryInsn.getOpcode() == Opcodes.GETSTATIC
+                && registryInsn.owner.equals(BUILT_IN_REGISTRIES_CLASS_NAME)))
+            return false;
+
+        methodNode.instructions.remove(registryInsn);
+        for (var keyInsn : keyInsns)
+            methodNode.instructions.remove(keyInsn);
+
+        insns.set(new InvokeDynamicInsnNode(
+                registryInsn.name,
+                Type.getMethodDescriptor(Type.getReturnType(methodInsn.desc)),
+                HANDLE_BSM_REGISTRY_CONSTANT,
+                new Handle(Opcodes.H_GETSTATIC, registryInsn.owner, registryInsn.name, registryInsn.desc, false),
+                new Handle(Opcodes.H_INVOKEINTERFACE, methodInsn.owner, methodInsn.name, methodInsn.desc, true),
+                key
+        ));
+        AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+        Utils.recordRewrite(this, classNode.name, methodNode);
+        return true;
+    }
+
+    /**
+     * Reads the key passed to a registry lookup, if it's either a {@code ResourceKey} or {@code Identifier} in a static
+     * field, or a valid {@code Identifier} made from string literals.
+     * @param keyInsns filled with the instructions producing the key, in order
+     * @return a ConstantDynamic resolving to the key, the getter of the static field holding it, whose finality is
+     * checked when linking as the field's class isn't at hand here, or null if it isn't constant
+     */
+    private static @Nullable Object constantKey(MethodInsnNode lookupInsn, List<AbstractInsnNode> keyInsns) {
+        var keyInsn = previousInsn(lookupInsn);
+        if (keyInsn instanceof FieldInsnNode fieldInsn && fieldInsn.getOpcode() == Opcodes.GETSTATIC
+                && (fieldInsn.desc.equals(RESOURCE_KEY_DESC) || fieldInsn.desc.equals(IdentifierLiterals.DESC))) {
+            keyInsns.add(fieldInsn);
+            return new Handle(Opcodes.H_GETSTATIC, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, false);
+        }
+
+        // Already folded by IdentifierLiteralTransformer
+        if (keyInsn instanceof LdcInsnNode ldcInsn && ldcInsn.cst instanceof ConstantDynamic condy
+                && condy.getDescriptor().equals(IdentifierLiterals.DESC)) {
+            keyInsns.add(ldcInsn);
+            return condy;
+        }
+
+        // `Identifier.fromNamespaceAndPath("ns", "path")` and the like
+        if (!(keyInsn instanceof MethodInsnNode factoryInsn)) return null;
+
+        var literals = IdentifierLiterals.find(factoryInsn);
+        if (literals == null) return null;
+
+        keyInsns.addAll(literals);
+        keyInsns.add(factoryInsn);
+        return IdentifierLiterals.toConstant(factoryInsn, literals);
+    }
+
+    /**
+     * @return the instruction before the given one, skipping line numbers but not labels, as those may be jumped to
+     */
+    private static @Nullable AbstractInsnNode previousInsn(AbstractInsnNode insn) {
+        var previous = insn.getPrevious();
+        while (previous instanceof LineNumberNode)
+            previous = previous.getPrevious();
+        return previous;
+    }
+
+    // Classes found by the generateAnacondyRules task are added to this list automatically
+    @Override
+    public @NotNull Set<Target> targets() {
+        return GeneratedRules.withGenerated(
+                Set.of(targetClass(MAPPED_REGISTRY_CLASS_NAME)),
+                GeneratedRules.INSTANCE.registryConstantReaders()
+        );
+    }
+}
@@ -0,0 +1,59 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.NonNull;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.Set;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+
+/**
+ * Signals each registry being frozen or unfrozen to {@code AnacondyBootstraps#registryFrozenChanged(Object, boolean)},
+ * allowing {@link RegistryConstantTransformer} call sites to fold lookups in that registry.
+ * <p>The end of {@code freeze()} and {@code unfreeze()} is hooked rather than writes to {@code MappedRegistry.frozen},
+ * as registries such as Forge's {@code NamespacedWrapper} override these to keep their own frozen state.</p>
+ */
+record RegistryFreezeTracker() implements Transformer<ClassNode>, ITransformer<ClassNode> {
+    @Override
+    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
+        for (var methodNode : classNode.methods) {
+            if ((methodNode.access & (Opcodes.ACC_STATIC | Opcodes.ACC_ABSTRACT)) != 0) continue;
+
+            boolean frozen;
+            if (methodNode.name.equals("freeze")) frozen = true;
+            else if (methodNode.name.equals("unfreeze")) frozen = false;
+            else continue;
+
+            for (var insn : methodNode.instructions.toArray()) {
+                if (insn.getOpcode() < Opcodes.IRETURN || insn.getOpcode() > Opcodes.RETURN) continue;
+
+                var track = new InsnList();
+                track.add(new VarInsnNode(Opcodes.ALOAD, 0));
+                track.add(new InsnNode(frozen ? Opcodes.ICONST_1 : Opcodes.ICONST_0));
+                track.add(new MethodInsnNode(
+                        Opcodes.INVOKESTATIC,
+                        "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+                        "registryFrozenChanged",
+                        "(Ljava/lang/Object;Z)V",
+                        false
+                ));
+                methodNode.instructions.insertBefore(insn, track);
+            }
+        }
+
+        return classNode;
+    }
+
+    @Override
+    public @NotNull Set<Target> targets() {
+        return Set.of(
+                targetClass("net/minecraft/core/MappedRegistry"),
+                targetClass("net/minecraftforge/registries/NamespacedWrapper"),
+                targetClass("net/minecraftforge/registries/NamespacedDefaultedWrapper")
+        );
+    }
+}
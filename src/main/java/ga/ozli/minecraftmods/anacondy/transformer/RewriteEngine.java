@@ -0,0 +1,214 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+
+/**
+ * Applies every {@link InsnRule} in a single walk over each targeted class, looking up each field, method and
+ * invokedynamic instruction in a precomputed index of the rules' {@link InsnRule.InsnKey keys} rather than having every
+ * rule walk the class separately.
+ * <p>Instructions are visited in order and the rules matching an instruction are tried in rule list order until one
+ * handles it, so rewrites that build on each other (e.g. a field copy becoming a singleton load, followed by a field
+ * read on that singleton) are applied deterministically.</p>
+ */
+final class RewriteEngine implements Transformer<ClassNode> {
+    private record Entry(int ruleIndex, InsnRule.InsnKey key) {}
+
+    /** Per class, the methods each rule is limited to, or null for the whole class */
+    private record Scope(int ruleIndex, @Nullable Set<String> methods) {}
+
+    private final List<InsnRule> rules;
+
+    // owner -> name -> entries, for keys with an owner and a name
+    private final Map<String, Map<String, List<Entry>>> byOwnerAndName = new HashMap<>();
+    // owner -> entries, for keys with an owner but any name
+    private final Map<String, List<Entry>> byOwner = new HashMap<>();
+    // desc -> entries, for keys with only a descriptor
+    private final Map<String, List<Entry>> byDesc = new HashMap<>();
+
+    private final Map<String, List<Scope>> scopesByClass = new HashMap<>();
+
+    RewriteEngine(List<InsnRule> rules) {
+        this.rules = List.copyOf(rules);
+
+        for (int i = 0; i < this.rules.size(); i++) {
+            var rule = this.rules.get(i);
+            for (var key : rule.keys()) {
+                var entry = new Entry(i, key);
+                if (key.owner() != null && key.name() != null) {
+                    byOwnerAndName.computeIfAbsent(key.owner(), k -> new HashMap<>())
+                            .computeIfAbsent(key.name(), k -> new ArrayList<>())
+                            .add(entry);
+                } else if (key.owner() != null) {
+                    byOwner.computeIfAbsent(key.owner(), k -> new ArrayList<>()).add(entry);
+                } else {
+                    byDesc.computeIfAbsent(key.desc(), k -> new ArrayList<>()).add(entry);
+                }
+            }
+
+            // Group the rule's targets by class, widening to the whole class if any target is a class target
+            var methodsByClass = new HashMap<String, Set<String>>();
+            var wholeClasses = new HashSet<String>();
+            for (var target : rule.targets()) {
+                if (target.targetType() == TargetType.CLASS) {
+                    wholeClasses.add(target.className());
+                } else {
+                    methodsByClass.computeIfAbsent(target.className(), k -> new HashSet<>())
+                            .add(target.elementName() + target.elementDescriptor());
+                }
+            }
+            for (var className : wholeClasses)
+                scopesByClass.computeIfAbsent(className, k -> new ArrayList<>()).add(new Scope(i, null));
+            for (var methods : methodsByClass.entrySet()) {
+                if (!wholeClasses.contains(methods.getKey()))
+                    scopesByClass.computeIfAbsent(methods.getKey(), k -> new ArrayList<>()).add(new Scope(i, Set.copyOf(methods.getValue())));
+            }
+        }
+    }
+
+    /**
+     * Replaces the instruction rules in the given rule list with a single engine, placed where the first of them was.
+     */
+    @SuppressWarnings("rawtypes")
+    static List<ITransformer> compile(List<? extends Rule> rules) {
+        var insnRules = new ArrayList<InsnRule>();
+        var transformers = new ArrayList<ITransformer>();
+        for (var rule : rules) {
+            switch (rule) {
+                case InsnRule insnRule -> {
+                    if (insnRules.isEmpty())
+                        transformers.add(null); // placeholder for the engine
+                    insnRules.add(insnRule);
+                }
+                case Transformer<?> transformer -> transformers.add(transformer);
+            }
+        }
+
+        if (!insnRules.isEmpty())
+            transformers.set(transformers.indexOf(null), new RewriteEngine(insnRules));
+
+        return transformers;
+    }
+
+    List<InsnRule> rules() {
+        return rules;
+    }
+
+    @Override
+    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
+        var scopes = scopesByClass.get(classNode.name);
+        if (scopes == null) return classNode;
+
+        // Bind each applicable rule to this class
+        var rewriters = new InsnRule.Rewriter[rules.size()];
+        var methodScopes = new Set<?>[rules.size()];
+        boolean anyBound = false;
+        for (var scope : scopes) {
+            var rewriter = rules.get(scope.ruleIndex).bind(classNode);
+            if (rewriter == null) continue;
+
+            rewriters[scope.ruleIndex] = rewriter;
+            methodScopes[scope.ruleIndex] = scope.methods;
+            anyBound = true;
+        }
+        if (!anyBound) return classNode;
+
+        var candidates = new ArrayList<Entry>();
+        for (var methodNode : classNode.methods) {
+            var methodKey = methodNode.name + methodNode.desc;
+            var insns = methodNode.instructions.iterator();
+            while (insns.hasNext()) {
+                var insn = insns.next();
+                String owner, name, desc;
+                switch (insn) {
+                    case FieldInsnNode fieldInsn -> {
+                        owner = fieldInsn.owner;
+                        name = fieldInsn.name;
+                        desc = fieldInsn.desc;
+                    }
+                    case MethodInsnNode methodInsn -> {
+                        owner = methodInsn.owner;
+                        name = methodInsn.name;
+                        desc = methodInsn.desc;
+                    }
+                    case InvokeDynamicInsnNode indyInsn -> {
+                        owner = indyInsn.bsm.getOwner();
+                        name = indyInsn.bsm.getName();
+                        desc = indyInsn.desc;
+                    }
+                    default -> {
+                        continue;
+                    }
+                }
+
+                if (!collectCandidates(candidates, owner, name, desc)) continue;
+
+                for (var candidate : candidates) {
+                    var rewriter = rewriters[candidate.ruleIndex];
+                    if (rewriter == null || !candidate.key.matches(insn.getOpcode(), desc)) continue;
+
+                    var methods = methodScopes[candidate.ruleIndex];
+                    if (methods != null && !methods.contains(methodKey)) continue;
+
+                    if (rewriter.rewrite(methodNode, insns, insn)) break;
+                }
+            }
+        }
+
+        return classNode;
+    }
+
+    /**
+     * Fills the given list with the index entries that may match the instruction, in rule order.
+     * @return false if there are none
+     */
+    private boolean collectCandidates(List<Entry> candidates, String owner, String name, String desc) {
+        candidates.clear();
+
+        var byName = byOwnerAndName.get(owner);
+        if (byName != null) {
+            var entries = byName.get(name);
+            if (entries != null)
+                candidates.addAll(entries);
+        }
+
+        var ownerEntries = byOwner.get(owner);
+        if (ownerEntries != null)
+            candidates.addAll(ownerEntries);
+
+        var descEntries = byDesc.get(desc);
+        if (descEntries != null)
+            candidates.addAll(descEntries);
+
+        if (candidates.size() > 1)
+            candidates.sort(Comparator.comparingInt(Entry::ruleIndex));
+
+        return !candidates.isEmpty();
+    }
+
+    @Override
+    public @NotNull Set<Target> targets() {
+        var targets = new HashSet<Target>();
+        for (var className : scopesByClass.keySet())
+            targets.add(targetClass(className));
+
+        return targets;
+    }
+}
@@ -0,0 +1,24 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+
+import java.util.Set;
+
+/**
+ * An entry in Anacondy's rule set: either a {@link Transformer} that works on whole classes, or an {@link InsnRule}
+ * that rewrites individual instructions as part of the {@link RewriteEngine}'s single pass.
+ */
+sealed interface Rule permits Transformer, InsnRule {
+    /**
+     * @return the classes or methods this rule applies to
+     */
+    Set<Target> targets();
+
+    /**
+     * @return a short name identifying this rule's rewrites, e.g. in
+     * {@link ga.ozli.minecraftmods.anacondy.DeoptimizationMonitor} reports
+     */
+    default String ruleName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,91 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+
+/**
+ * Rewrites {@code GETFIELD singleton.sessionField} instructions to an invokedynamic that constant folds the field for
+ * the duration of a session, for fields like {@code Minecraft.level} that are replaced on world change or disconnect.
+ * <p>Every {@code PUTFIELD} of a session field is followed by a call to
+ * {@link ga.ozli.minecraftmods.anacondy.AnacondyBootstraps#invalidateSessionConstants()}, which relinks all of them
+ * together via a shared {@link java.lang.invoke.SwitchPoint}. The field owner is always transformed so that its own
+ * writes are seen, so this is only suitable for fields that aren't written from outside of their owner.</p>
+ *
+ * @param targetClasses the classes reading the session fields, in addition to the field owner itself
+ * @param fieldOwner    the singleton class declaring the session fields
+ * @param sessionFields the names of the session fields
+ */
+record SessionConstantTransformer(Set<Target> targetClasses, String fieldOwner, Set<String> sessionFields)
+        implements InsnRule {
+    private static final Handle HANDLE_BSM_SESSION_CONSTANT = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+            "sessionConstant",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
+    @Override
+    public Set<InsnKey> keys() {
+        var keys = new HashSet<InsnKey>();
+        for (var sessionField : sessionFields) {
+            keys.add(InsnKey.of(Opcodes.GETFIELD, fieldOwner, sessionField));
+            keys.add(InsnKey.of(Opcodes.PUTFIELD, fieldOwner, sessionField));
+        }
+        return keys;
+    }
+
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        return (methodNode, insns, insn) -> {
+            var fieldInsn = (FieldInsnNode) insn;
+            switch (fieldInsn.getOpcode()) {
+                // The receiver is left on the stack and passed to the indy, which drops it once constant
+                case Opcodes.GETFIELD -> {
+                    insns.set(new InvokeDynamicInsnNode(
+                            fieldInsn.name,
+                            "(L" + fieldOwner + ";)" + fieldInsn.desc,
+                            HANDLE_BSM_SESSION_CONSTANT,
+                            new Handle(Opcodes.H_GETFIELD, fieldOwner, fieldInsn.name, fieldInsn.desc, false)
+                    ));
+                    AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+                    Utils.recordRewrite(this, classNode.name, methodNode);
+                }
+                case Opcodes.PUTFIELD -> insns.add(new MethodInsnNode(
+                        Opcodes.INVOKESTATIC,
+                        "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+                        "invalidateSessionConstants",
+                        "()V",
+                        false
+                ));
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    @Override
+    public String ruleName() {
+        return "SessionConstantTransformer[" + fieldOwner + ' ' + sessionFields + ']';
+    }
+
+    @Override
+    public @NotNull Set<Target> targets() {
+        var targets = new HashSet<>(targetClasses);
+        targets.add(targetClass(fieldOwner));
+        return targets;
+    }
+}
@@ -1,50 +1,97 @@
 package ga.ozli.minecraftmods.anacondy.transformer;
 
-import cpw.mods.modlauncher.api.ITransformer;
-import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.ITransformer.Target;
 import org.jetbrains.annotations.NotNull;
-import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 
 import java.lang.constant.ConstantDescs;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
  * Rewrites {@code GETFIELD this.finalField} instructions inside the singleton classes to instead use ConstantDynamics
  * that access the final fields via the singleton instance, effectively turning them into trusted final fields.
+ * Fields proven to be effectively final by {@link EffectivelyFinalFields}, either by the generateAnacondyRules task or
+ * at runtime for private fields, are treated the same as final fields. Reads inside the constructor helpers it finds
+ * are left alone, as those run mid-construction where neither the field nor the singleton may be assigned yet. Fields
+ * only proven at runtime are always folded as if listed in {@code whenNonNullFieldNames}, as they haven't been checked
+ * against every method that may read them during construction.
+ * <p>Fields that may be read before they're assigned, such as from methods called during the singleton's own
+ * construction, can be listed in {@code whenNonNullFieldNames} rather than blacklisting the methods that read them early.
+ * Those are read live until first seen non-null (or non-default for primitives) and then folded to that value. Until
+ * then every read goes through a method handle and boxes primitives, so this should only be used for the fields that
+ * need it.</p>
  */
 record SingletonAccessedFieldsTransformer(
         Target targetClass,
         ConstantDynamic singletonAccessorCondy,
-        Predicate<String> isMethodNameBlacklisted
-) implements Transformer<ClassNode>, ITransformer<ClassNode> {
+        Predicate<String> isMethodNameBlacklisted,
+        Set<String> whenNonNullFieldNames
+) implements InsnRule {
     SingletonAccessedFieldsTransformer(Target targetClass, ConstantDynamic singletonAccessorCondy) {
         this(targetClass, singletonAccessorCondy, Set.of(ConstantDescs.CLASS_INIT_NAME, ConstantDescs.INIT_NAME, "close"));
     }
 
     SingletonAccessedFieldsTransformer(Target targetClass, ConstantDynamic singletonAccessorCondy, Set<String> blacklistedMethods) {
-        this(targetClass, singletonAccessorCondy, blacklistedMethods::contains);
+        this(targetClass, singletonAccessorCondy, blacklistedMethods, Set.of());
+    }
+
+    SingletonAccessedFieldsTransformer(
+            Target targetClass,
+            ConstantDynamic singletonAccessorCondy,
+            Set<String> blacklistedMethods,
+            Set<String> whenNonNullFieldNames
+    ) {
+        this(targetClass, singletonAccessorCondy, blacklistedMethods::contains, whenNonNullFieldNames);
+    }
+
+    SingletonAccessedFieldsTransformer(
+            Target targetClass,
+            ConstantDynamic singletonAccessorCondy,
+            Predicate<String> isMethodNameBlacklisted
+    ) {
+        this(targetClass, singletonAccessorCondy, isMethodNameBlacklisted, Set.of());
     }
 
     @Override
-    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
+    public Set<InsnKey> keys() {
+        return Set.of(new InsnKey(Opcodes.GETFIELD, targetClass.className(), null, null));
+    }
+
+    @Override
+    public @Nullable Rewriter bind(ClassNode classNode) {
+        Set<String> effectivelyFinalFieldNames = GeneratedRules.INSTANCE.effectivelyFinalFieldNames(classNode.name, false);
+        var proven = EffectivelyFinalFields.findPrivate(classNode);
         Set<FieldNode> instanceFinalFields = classNode.fields.stream()
-                .filter(fieldNode -> (fieldNode.access & Opcodes.ACC_FINAL) != 0)
+                .filter(fieldNode -> (fieldNode.access & Opcodes.ACC_FINAL) != 0
+                        || effectivelyFinalFieldNames.contains(fieldNode.name)
+                        || proven.fieldNames().contains(fieldNode.name))
                 .filter(fieldNode -> (fieldNode.access & Opcodes.ACC_STATIC) == 0)
                 .collect(Collectors.toUnmodifiableSet());
+        if (instanceFinalFields.isEmpty()) return null;
 
         Set<String> instanceFinalFieldNames = instanceFinalFields.stream()
                 .map(fieldNode -> fieldNode.name)
                 .collect(Collectors.toUnmodifiableSet());
 
+        // Only proven while loading this class, so a read from a method the constructor calls could still come before the
+        // write. Fold these on the first non-null read rather than risking a CONDY resolving to null.
+        Set<String> runtimeProvenFieldNames = instanceFinalFields.stream()
+                .filter(fieldNode -> (fieldNode.access & Opcodes.ACC_FINAL) == 0
+                        && !effectivelyFinalFieldNames.contains(fieldNode.name))
+                .map(fieldNode -> fieldNode.name)
+                .collect(Collectors.toUnmodifiableSet());
+
         Set<String> nullableFieldNames = instanceFinalFields.stream()
                 .filter(fieldNode -> fieldNode.visibleTypeAnnotations != null)
                 .filter(fieldNode -> fieldNode.visibleTypeAnnotations.stream()
@@ -52,46 +99,57 @@ record SingletonAccessedFieldsTransformer(
                 .map(fieldNode -> fieldNode.name)
                 .collect(Collectors.toUnmodifiableSet());
 
-        for (var methodNode : classNode.methods) {
-            if (isMethodNameBlacklisted.test(methodNode.name)) continue;
-            if (methodNode.name.contains("$")) continue; // skip lambdas, anonymous classes, etc.
-
-            var insns = methodNode.instructions.iterator();
-            while (insns.hasNext()) {
-                var insn = insns.next();
-                if (!(insn instanceof FieldInsnNode fieldInsn
-                        && fieldInsn.getOpcode() == Opcodes.GETFIELD
-                        && fieldInsn.owner.equals(targetClass.className())
-                        && instanceFinalFieldNames.contains(fieldInsn.name)))
-                    continue;
-
-                // First replace the ALOAD 0/instance grab insn with a NOP
-                Utils.removePreviousInsnsIfSingletonInstanceLoad(insns, true);
-
-                // Then replace with a CONDY that accesses the field using the singleton instance
-                insns.set(new LdcInsnNode(new ConstantDynamic(
-                        Utils.camelCaseToScreamingSnakeCase(fieldInsn.name),
-                        fieldInsn.desc,
-                        // Null-check only if the field is not meant to be nullable
-                        !nullableFieldNames.contains(fieldInsn.name)
-                                ? AnacondyTransformers.HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS
-                                : AnacondyTransformers.HANDLE_BSM_INVOKE,
-                        new Handle(
-                                Opcodes.H_GETFIELD,
-                                targetClass.className(),
-                                fieldInsn.name,
-                                fieldInsn.desc,
-                                false
-                        ),
-                        singletonAccessorCondy
-                )));
+        return (methodNode, insns, insn) -> {
+            if (isMethodNameBlacklisted.test(methodNode.name)) return false;
+            if (methodNode.name.contains("$")) return false; // skip lambdas, anonymous classes, etc.
+            if (proven.isConstructorHelper(methodNode)) return false;
+
+            var fieldInsn = (FieldInsnNode) insn;
+            if (!instanceFinalFieldNames.contains(fieldInsn.name)) return false;
+
+            if (whenNonNullFieldNames.contains(fieldInsn.name) || runtimeProvenFieldNames.contains(fieldInsn.name)) {
+                // Keep the ALOAD 0/instance grab insn, as it's needed for the live reads until the field is set
+                insns.set(new InvokeDynamicInsnNode(
+                        fieldInsn.name,
+                        "(L" + fieldInsn.owner + ";)" + fieldInsn.desc,
+                        AnacondyTransformers.HANDLE_BSM_FOLD_WHEN_NON_NULL,
+                        new Handle(Opcodes.H_GETFIELD, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, false)
+                ));
                 AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+                Utils.recordRewrite(this, classNode.name, methodNode);
+                return true;
             }
-        }
 
-//            LOGGER.info("Anacondy constant folded " + TOTAL_REWRITES + " final fields");
+            // First replace the ALOAD 0/instance grab insn with a NOP
+            Utils.removePreviousInsnsIfSingletonInstanceLoad(insns, true);
 
-        return classNode;
+            // Then replace with a CONDY that accesses the field using the singleton instance
+            insns.set(new LdcInsnNode(new ConstantDynamic(
+                    Utils.camelCaseToScreamingSnakeCase(fieldInsn.name),
+                    fieldInsn.desc,
+                    // Null-check only if the field is not meant to be nullable
+                    !nullableFieldNames.contains(fieldInsn.name)
+                            ? AnacondyTransformers.HANDLE_BSM_INVOKE_NON_NULL_1_ARG
+                            : AnacondyTransformers.HANDLE_BSM_INVOKE,
+                    new Handle(
+                            Opcodes.H_GETFIELD,
+                            targetClass.className(),
+                            fieldInsn.name,
+                            fieldInsn.desc,
+                            false
+                    ),
+                    singletonAccessorCondy
+            )));
+            AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+            Utils.recordRewrite(this, classNode.name, methodNode);
+            return true;
+        };
+    }
+
+    @Override
+    public String ruleName() {
+        return "SingletonAccessedFieldsTransformer[" + singletonAccessorCondy.getName() + ", whenNonNull="
+                + new TreeSet<>(whenNonNullFieldNames) + ']';
     }
 
     @Override
@@ -1,34 +1,55 @@
 package ga.ozli.minecraftmods.anacondy.transformer;
 
-import cpw.mods.modlauncher.api.ITransformer;
-import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.ITransformer.Target;
 import org.jetbrains.annotations.NotNull;
-import org.jspecify.annotations.NonNull;
 import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
 import java.lang.constant.ConstantDescs;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.function.Predicate;
 
 /**
  * A version of {@link SingletonAccessedFieldsTransformer} intended for fields inside a different singleton class than
  * the one being transformed.
+ * <p>Classes that are loaded and used while the singleton is still being constructed should use
+ * {@link FieldResolution#AFTER_SINGLETON_INIT}, as CONDY resolution at that point either fails on a not yet assigned
+ * field or deadlocks against the thread doing the construction.</p>
  */
 record SingletonAccessedForeignFieldsTransformer(
         Set<Target> targetClasses,
         ConstantDynamic singletonAccessorCondy,
         Set<String> allowedForeignFields,
-        Predicate<String> isMethodNameBlacklisted
-) implements Transformer<ClassNode>, ITransformer<ClassNode> {
+        Predicate<String> isMethodNameBlacklisted,
+        FieldResolution resolution
+) implements InsnRule {
+    private static final Handle HANDLE_BSM_FOLD_AFTER_SINGLETON_INIT = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+            "foldAfterSingletonInit",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;",
+            false
+    );
+
     SingletonAccessedForeignFieldsTransformer(Set<Target> targetClasses, ConstantDynamic singletonAccessorCondy, Set<String> allowedForeignFields) {
+        this(targetClasses, singletonAccessorCondy, allowedForeignFields, FieldResolution.CONDY);
+    }
+
+    SingletonAccessedForeignFieldsTransformer(
+            Set<Target> targetClasses,
+            ConstantDynamic singletonAccessorCondy,
+            Set<String> allowedForeignFields,
+            FieldResolution resolution
+    ) {
         this(
                 targetClasses,
                 singletonAccessorCondy,
                 allowedForeignFields,
-                Set.of(ConstantDescs.CLASS_INIT_NAME, ConstantDescs.INIT_NAME, "close")
+                Set.of(ConstantDescs.CLASS_INIT_NAME, ConstantDescs.INIT_NAME, "close")::contains,
+                resolution
         );
     }
 
@@ -38,41 +59,54 @@ record SingletonAccessedForeignFieldsTransformer(
             Set<String> allowedForeignFields,
             Set<String> blacklistedMethodNames
     ) {
-        this(targetClasses, singletonAccessorCondy, allowedForeignFields, blacklistedMethodNames::contains);
+        this(targetClasses, singletonAccessorCondy, allowedForeignFields, blacklistedMethodNames::contains, FieldResolution.CONDY);
     }
 
     @Override
-    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
-        for (var methodNode : classNode.methods) {
-            if (isMethodNameBlacklisted.test(methodNode.name)) continue;
-            if (methodNode.name.contains("$")) continue;
+    public Set<InsnKey> keys() {
+        var singletonOwner = Utils.fieldDescToInternalName(singletonAccessorCondy.getDescriptor());
+        var keys = new HashSet<InsnKey>();
+        for (var foreignField : allowedForeignFields)
+            keys.add(InsnKey.of(Opcodes.GETFIELD, singletonOwner, foreignField));
 
-            var insns = methodNode.instructions.iterator();
-            while (insns.hasNext()) {
-                var insn = insns.next();
-                if (!(insn instanceof FieldInsnNode fieldInsn
-                        && fieldInsn.getOpcode() == Opcodes.GETFIELD
-                        && allowedForeignFields.contains(fieldInsn.name)
-                        && fieldInsn.owner.equals(Utils.fieldDescToInternalName(singletonAccessorCondy.getDescriptor()))))
-                    continue;
+        return keys;
+    }
 
-                Utils.removePreviousInsnsIfSingletonInstanceLoad(insns, false);
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        return (methodNode, insns, insn) -> {
+            if (isMethodNameBlacklisted.test(methodNode.name)) return false;
+            if (methodNode.name.contains("$")) return false;
 
-                insns.set(new LdcInsnNode(new ConstantDynamic(
-                        Utils.camelCaseToScreamingSnakeCase(fieldInsn.name),
-                        fieldInsn.desc,
-                        AnacondyTransformers.HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS,
-                        new Handle(Opcodes.H_GETFIELD, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, false),
-                        singletonAccessorCondy
-                )));
+            var fieldInsn = (FieldInsnNode) insn;
+            var fieldGetter = new Handle(Opcodes.H_GETFIELD, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, false);
+            switch (resolution) {
+                case CONDY -> {
+                    Utils.removePreviousInsnsIfSingletonInstanceLoad(insns, false);
 
-//                AnacondyTransformers.LOGGER.info("");
-//                AnacondyTransformers.LOGGER.info(methodNode.name + methodNode.desc + " in " + classNode.name);
-//                AnacondyTransformers.LOGGER.info(ASMAPI.methodNodeToString(methodNode));
+                    insns.set(new LdcInsnNode(Utils.invokeNonNullCondy(
+                            Utils.camelCaseToScreamingSnakeCase(fieldInsn.name),
+                            fieldInsn.desc,
+                            fieldGetter,
+                            singletonAccessorCondy
+                    )));
+                }
+                // Keep the singleton instance on the stack for the live reads until it has been initialised
+                case AFTER_SINGLETON_INIT -> insns.set(new InvokeDynamicInsnNode(
+                        fieldInsn.name,
+                        "(L" + fieldInsn.owner + ";)" + fieldInsn.desc,
+                        HANDLE_BSM_FOLD_AFTER_SINGLETON_INIT,
+                        fieldGetter
+                ));
             }
-        }
+            Utils.recordRewrite(this, classNode.name, methodNode);
+            return true;
+        };
+    }
 
-        return classNode;
+    @Override
+    public String ruleName() {
+        return "SingletonAccessedForeignFieldsTransformer[" + singletonAccessorCondy.getName() + ", " + resolution + ']';
     }
 
     @Override
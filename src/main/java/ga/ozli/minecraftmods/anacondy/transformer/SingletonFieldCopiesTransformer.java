@@ -1,65 +1,125 @@
 package ga.ozli.minecraftmods.anacondy.transformer;
 
-import cpw.mods.modlauncher.api.ITransformer;
-import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.ITransformer.Target;
 import org.jetbrains.annotations.NotNull;
-import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 
 import java.lang.constant.ConstantDescs;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
 
-// Todo: Generalise this to work for any specified singleton class, not just Minecraft
 /**
- * Rewrites {@code GETFIELD minecraft} and similar instructions to instead call {@code Minecraft.getInstance()},
- * expanding the benefit of constant folding optimisations via the ConstantDynamic in that method made by
- * {@link StaticFieldGetToCondy}.
+ * Rewrites reads of singletons from copies held in other objects' fields, such as {@code GETFIELD this.minecraft} or
+ * {@code GETFIELD this.options}, so that they're constant folded.
+ * <p>Copies of the Minecraft instance are replaced with a call to {@code Minecraft.getInstance()}, expanding the
+ * benefit of the ConstantDynamic in that method made by {@link StaticFieldGetToCondy}. Copies of the other singletons
+ * are replaced with an indy that folds to the first non-null value read, as many of the holders are used while the
+ * singletons are still being created, where a CONDY would fail to resolve. As the singleton is the only instance of
+ * its class, the value read is the same for every holder, but only copies held in (effectively) final fields are
+ * rewritten so that a copy that's later cleared isn't folded.</p>
+ *
+ * @param singletonClasses the internal names of the classes that are only ever instantiated once, in addition to those
+ *                         found by the generateAnacondyRules task
  */
-final class MinecraftClientFieldCopiesTransformer implements Transformer<ClassNode>, ITransformer<ClassNode> {
+record SingletonFieldCopiesTransformer(Set<String> singletonClasses) implements InsnRule {
+    private static final String MINECRAFT_DESC = 'L' + Utils.MINECRAFT_CLASS_NAME + ';';
+
+    SingletonFieldCopiesTransformer {
+        var union = new HashSet<>(singletonClasses);
+        union.add(Utils.MINECRAFT_CLASS_NAME);
+        union.addAll(GeneratedRules.INSTANCE.singletonTypes());
+        singletonClasses = Set.copyOf(union);
+    }
+
+    @Override
+    public Set<InsnKey> keys() {
+        return singletonClasses.stream()
+                .map(className -> new InsnKey(Opcodes.GETFIELD, null, null, 'L' + className + ';'))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
     @Override
-    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
-        for (var methodNode : classNode.methods) {
-            if (methodNode.name.equals(ConstantDescs.CLASS_INIT_NAME)) continue;
-
-            var insns = methodNode.instructions.iterator();
-            while (insns.hasNext()) {
-                var insn = insns.next();
-                if (!(insn instanceof FieldInsnNode fieldInsn
-                        && fieldInsn.desc.equals("Lnet/minecraft/client/Minecraft;")))
-                    continue;
-
-                if (fieldInsn.getOpcode() == Opcodes.GETFIELD) {
-                    // First replace the ALOAD 0 with NOP
-                    Utils.removePreviousALoad0IfPresent(insns);
-
-                    // Then replace with a call to Minecraft.getInstance()
-                    insns.set(new MethodInsnNode(
-                            Opcodes.INVOKESTATIC,
-                            AnacondyTransformers.TARGET_MC_GET_INSTANCE_METHOD.className(),
-                            AnacondyTransformers.TARGET_MC_GET_INSTANCE_METHOD.elementName(),
-                            AnacondyTransformers.TARGET_MC_GET_INSTANCE_METHOD.elementDescriptor(),
-                            false
-                    ));
-                    AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
-                }
+    public @Nullable Rewriter bind(ClassNode classNode) {
+        // the singleton's own fields are handled by SingletonAccessedFieldsTransformer
+        if (classNode.name.equals(Utils.MINECRAFT_CLASS_NAME)) return null;
+
+        var ownCopies = findOwnCopies(classNode);
+        return (methodNode, insns, insn) -> {
+            if (methodNode.name.equals(ConstantDescs.CLASS_INIT_NAME)) return false;
+
+            var fieldInsn = (FieldInsnNode) insn;
+            if (fieldInsn.desc.equals(MINECRAFT_DESC)) {
+                // First replace the ALOAD 0 with NOP
+                Utils.removePreviousALoad0IfPresent(insns);
+
+                // Then replace with a call to Minecraft.getInstance()
+                insns.set(new MethodInsnNode(
+                        Opcodes.INVOKESTATIC,
+                        AnacondyTransformers.TARGET_MC_GET_INSTANCE_METHOD.className(),
+                        AnacondyTransformers.TARGET_MC_GET_INSTANCE_METHOD.elementName(),
+                        AnacondyTransformers.TARGET_MC_GET_INSTANCE_METHOD.elementDescriptor(),
+                        false
+                ));
+            } else {
+                var isOwnCopy = fieldInsn.owner.equals(classNode.name) && ownCopies.contains(fieldInsn.name);
+                if (!isOwnCopy && !GeneratedRules.INSTANCE.isSingletonCopy(fieldInsn.owner, fieldInsn.name, fieldInsn.desc))
+                    return false;
+
+                // The holder stays on the stack for the live reads until the copy is first seen non-null
+                insns.set(new InvokeDynamicInsnNode(
+                        fieldInsn.name,
+                        "(L" + fieldInsn.owner + ";)" + fieldInsn.desc,
+                        AnacondyTransformers.HANDLE_BSM_FOLD_WHEN_NON_NULL,
+                        new Handle(Opcodes.H_GETFIELD, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, false)
+                ));
             }
+            AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+            Utils.recordRewrite(this, classNode.name, methodNode);
+            return true;
+        };
+    }
+
+    /**
+     * @return the names of the class' own final or effectively final instance fields holding a singleton
+     */
+    private Set<String> findOwnCopies(ClassNode classNode) {
+        var copies = new HashSet<String>();
+        var hasNonFinalCopies = false;
+        for (var fieldNode : classNode.fields) {
+            if ((fieldNode.access & Opcodes.ACC_STATIC) != 0 || !isSingletonDesc(fieldNode.desc)) continue;
+
+            if ((fieldNode.access & Opcodes.ACC_FINAL) != 0)
+                copies.add(fieldNode.name);
+            else
+                hasNonFinalCopies = true;
         }
 
-//            LOGGER.info("Anacondy constant folded " + TOTAL_REWRITES + " fields");
+        if (hasNonFinalCopies) {
+            copies.addAll(GeneratedRules.INSTANCE.effectivelyFinalFieldNames(classNode.name, false));
+            copies.addAll(EffectivelyFinalFields.findPrivate(classNode).fieldNames());
+        }
+
+        return copies;
+    }
 
-        return classNode;
+    private boolean isSingletonDesc(String desc) {
+        return desc.length() > 2 && desc.charAt(0) == 'L'
+                && singletonClasses.contains(desc.substring(1, desc.length() - 1));
     }
 
-    // todo: make this global for all MC client classes, or figure out a way to find all classes that reference the
-    //       Minecraft instance at build time to avoid needing to manually find and list them here each MC version
+    // Classes found by the generateAnacondyRules task are added to this list automatically
     @Override
     public @NotNull Set<Target> targets() {
-        return Set.of(
+        return GeneratedRules.withGenerated(Set.of(
                 targetClass("com/mojang/blaze3d/platform/FramerateLimitTracker"),
 
                 targetClass("com/mojang/realmsclient/client/RealmsClient"),
@@ -138,6 +198,6 @@ final class MinecraftClientFieldCopiesTransformer implements Transformer<ClassNo
                 targetClass("net/minecraft/client/sounds/MusicManager"),
 
                 targetClass("net/minecraft/client/telemetry/ClientTelemetryManager")
-        );
+        ), GeneratedRules.INSTANCE.fieldCopyHolders());
     }
 }
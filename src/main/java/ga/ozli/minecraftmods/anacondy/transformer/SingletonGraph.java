@@ -0,0 +1,225 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.constant.ConstantDescs;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+
+/**
+ * The singletons declared in {@code anacondy/singletons.txt} as paths from the Minecraft instance, such as
+ * {@code Minecraft.gameRenderer.mainCamera}, turned into {@link SingletonAccessedFieldsTransformer} rules with their
+ * ConstantDynamic chains and the {@link Workarounds.MakeFieldAccessible} rules needed for the chains to resolve.
+ * <p>The bundled file can be layered over with one of the same name in the config directory, set with
+ * {@code -Danacondy.configDir} (default {@code config/anacondy}), whose lines replace the bundled ones for the same
+ * class. Invalid lines are skipped with a warning rather than failing the launch.</p>
+ *
+ * @param rules            the rules for the enabled singletons, access fixes first
+ * @param singletonClasses the internal names of all declared singletons, enabled or not
+ */
+record SingletonGraph(List<Rule> rules, Set<String> singletonClasses) {
+    private static final String FILE_NAME = "singletons.txt";
+    private static final String ROOT = "Minecraft";
+
+    private static final Path CONFIG_FILE = Path.of(System.getProperty("anacondy.configDir", "config/anacondy"))
+            .resolve(FILE_NAME);
+
+    private record Declaration(String className, String path, Map<String, String> options) {
+        String desc() {
+            return 'L' + className + ';';
+        }
+
+        boolean isEnabled() {
+            return Boolean.parseBoolean(options.getOrDefault("enabled", "true"));
+        }
+    }
+
+    private record AccessedField(String holderClass, String name, String desc) {}
+
+    /**
+     * @param rootCondy the ConstantDynamic for the Minecraft instance that every path starts from
+     */
+    static SingletonGraph load(ConstantDynamic rootCondy) {
+        var declarations = new LinkedHashMap<String, Declaration>();
+        try (var in = SingletonGraph.class.getResourceAsStream("/anacondy/" + FILE_NAME)) {
+            if (in != null)
+                read(in, "bundled " + FILE_NAME, declarations);
+        } catch (IOException e) {
+            AnacondyTransformers.LOGGER.warn("Failed to read the bundled {}", FILE_NAME, e);
+        }
+
+        if (Files.isRegularFile(CONFIG_FILE)) {
+            try (var in = Files.newInputStream(CONFIG_FILE)) {
+                read(in, CONFIG_FILE.toString(), declarations);
+                AnacondyTransformers.LOGGER.info("Applied singleton rule overrides from {}", CONFIG_FILE);
+            } catch (IOException e) {
+                AnacondyTransformers.LOGGER.warn("Failed to read {}, using the bundled singleton rules", CONFIG_FILE, e);
+            }
+        }
+
+        var byPath = new HashMap<String, Declaration>();
+        for (var declaration : declarations.values())
+            byPath.put(declaration.path(), declaration);
+
+        var condies = new HashMap<String, ConstantDynamic>();
+        var accessors = new LinkedHashMap<AccessedField, Set<String>>();
+        var fieldRules = new ArrayList<Rule>();
+        for (var declaration : declarations.values()) {
+            if (!declaration.isEnabled()) continue;
+
+            var condy = resolve(declaration, byPath, rootCondy, condies);
+            if (condy == null) continue;
+
+            addAccessors(declaration, byPath, accessors);
+            fieldRules.add(new SingletonAccessedFieldsTransformer(
+                    targetClass(declaration.className()),
+                    condy,
+                    methodFilter(declaration),
+                    whenNonNullFieldNames(declaration)
+            ));
+        }
+
+        var rules = new ArrayList<Rule>();
+        accessors.forEach((field, accessorClasses) -> rules.add(new Workarounds.MakeFieldAccessible(
+                targetClass(field.holderClass()), field.name(), field.desc(), Set.copyOf(accessorClasses)
+        )));
+        rules.addAll(fieldRules);
+        return new SingletonGraph(List.copyOf(rules), Set.copyOf(declarations.keySet()));
+    }
+
+    private static void read(InputStream in, String source, Map<String, Declaration> declarations) throws IOException {
+        var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            var parts = line.split("\\s+");
+            if (parts.length < 3 || !parts[1].equals("=") || !parts[2].startsWith(ROOT + '.')) {
+                AnacondyTransformers.LOGGER.warn("Skipping invalid singleton rule in {}: {}", source, line);
+                continue;
+            }
+
+            var options = new HashMap<String, String>();
+            for (int i = 3; i < parts.length; i++) {
+                var option = parts[i].split("=", 2);
+                if (option.length != 2) {
+                    AnacondyTransformers.LOGGER.warn("Skipping invalid option {} of singleton rule in {}", parts[i], source);
+                    continue;
+                }
+                options.put(option[0], option[1]);
+            }
+
+            declarations.put(parts[0], new Declaration(parts[0], parts[2], Map.copyOf(options)));
+        }
+    }
+
+    /**
+     * @return the ConstantDynamic chain for the given singleton, or null if its path doesn't lead back to the root
+     */
+    private static @Nullable ConstantDynamic resolve(
+            Declaration declaration,
+            Map<String, Declaration> byPath,
+            ConstantDynamic rootCondy,
+            Map<String, ConstantDynamic> condies
+    ) {
+        var cached = condies.get(declaration.path());
+        if (cached != null) return cached;
+
+        int lastDot = declaration.path().lastIndexOf('.');
+        var parentPath = declaration.path().substring(0, lastDot);
+        var fieldName = declaration.path().substring(lastDot + 1);
+
+        String holderClass;
+        ConstantDynamic holderCondy;
+        if (parentPath.equals(ROOT)) {
+            holderClass = Utils.MINECRAFT_CLASS_NAME;
+            holderCondy = rootCondy;
+        } else {
+            var parent = byPath.get(parentPath);
+            if (parent == null) {
+                AnacondyTransformers.LOGGER.warn(
+                        "Skipping singleton rule for {} as {} isn't declared", declaration.className(), parentPath
+                );
+                return null;
+            }
+
+            holderClass = parent.className();
+            holderCondy = resolve(parent, byPath, rootCondy, condies);
+            if (holderCondy == null) return null;
+        }
+
+        var simpleName = declaration.className().substring(declaration.className().lastIndexOf('/') + 1);
+        var condyName = Utils.camelCaseToScreamingSnakeCase(simpleName) + "_INSTANCE";
+        var fieldGetter = new Handle(Opcodes.H_GETFIELD, holderClass, fieldName, declaration.desc(), false);
+
+        var condy = Boolean.parseBoolean(declaration.options().getOrDefault("nullable", "false"))
+                ? new ConstantDynamic(condyName, declaration.desc(), AnacondyTransformers.HANDLE_BSM_INVOKE, fieldGetter, holderCondy)
+                : Utils.invokeNonNullCondy(condyName, declaration.desc(), fieldGetter, holderCondy);
+
+        condies.put(declaration.path(), condy);
+        return condy;
+    }
+
+    /**
+     * Records the singleton's class as needing to read every field along its path, as the chain is resolved from inside
+     * the singleton's class rather than the classes holding the fields. The fields are only widened where that class
+     * can't already read them.
+     */
+    private static void addAccessors(
+            Declaration declaration,
+            Map<String, Declaration> byPath,
+            Map<AccessedField, Set<String>> accessors
+    ) {
+        var current = declaration;
+        while (current != null) {
+            int lastDot = current.path().lastIndexOf('.');
+            var parentPath = current.path().substring(0, lastDot);
+            var parent = parentPath.equals(ROOT) ? null : byPath.get(parentPath);
+            var holderClass = parent == null ? Utils.MINECRAFT_CLASS_NAME : parent.className();
+
+            accessors.computeIfAbsent(
+                    new AccessedField(holderClass, current.path().substring(lastDot + 1), current.desc()),
+                    k -> new LinkedHashSet<>()
+            ).add(declaration.className());
+            current = parent;
+        }
+    }
+
+    private static Predicate<String> methodFilter(Declaration declaration) {
+        var only = declaration.options().get("only");
+        if (only != null) {
+            var whitelist = Set.of(only.split(","));
+            return methodName -> !whitelist.contains(methodName);
+        }
+
+        var blacklist = new HashSet<>(Set.of(declaration.options().getOrDefault("blacklist", "close").split(",")));
+        blacklist.add(ConstantDescs.CLASS_INIT_NAME);
+        blacklist.add(ConstantDescs.INIT_NAME);
+        return Set.copyOf(blacklist)::contains;
+    }
+
+    private static Set<String> whenNonNullFieldNames(Declaration declaration) {
+        var fieldNames = declaration.options().get("when-non-null");
+        return fieldNames == null ? Set.of() : Set.of(fieldNames.split(","));
+    }
+}
@@ -0,0 +1,49 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.NonNull;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.lang.constant.ConstantDescs;
+import java.util.Set;
+
+/**
+ * Signals the end of a singleton's construction to {@code AnacondyBootstraps#singletonInitialised(Class)}, allowing
+ * {@link FieldResolution#AFTER_SINGLETON_INIT} field reads of it to start folding.
+ * <p>Every constructor of the target class is instrumented, so singletons with delegating constructors are considered
+ * initialised once the first of them returns.</p>
+ */
+record SingletonInitTracker(Target targetClass) implements Transformer<ClassNode>, ITransformer<ClassNode> {
+    @Override
+    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
+        for (var methodNode : classNode.methods) {
+            if (!methodNode.name.equals(ConstantDescs.INIT_NAME)) continue;
+
+            for (var insn : methodNode.instructions.toArray()) {
+                if (!(insn instanceof InsnNode && insn.getOpcode() == Opcodes.RETURN)) continue;
+
+                var signal = new InsnList();
+                signal.add(new LdcInsnNode(Type.getObjectType(classNode.name)));
+                signal.add(new MethodInsnNode(
+                        Opcodes.INVOKESTATIC,
+                        "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+                        "singletonInitialised",
+                        "(Ljava/lang/Class;)V",
+                        false
+                ));
+                methodNode.instructions.insertBefore(insn, signal);
+            }
+        }
+
+        return classNode;
+    }
+
+    @Override
+    public @NotNull Set<Target> targets() {
+        return Set.of(targetClass);
+    }
+}
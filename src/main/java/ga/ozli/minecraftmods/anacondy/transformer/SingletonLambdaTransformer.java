@@ -0,0 +1,80 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Rewrites lambdas and method references that only capture singletons, such as {@code () -> this.options.foo} inside
+ * the game renderer or {@code minecraft::getWindow}, so that they're created once and then reused rather than
+ * allocated every time they're evaluated.
+ * <p>The {@code LambdaMetafactory} call site is relinked through
+ * {@link ga.ozli.minecraftmods.anacondy.AnacondyBootstraps#foldSingletonLambda}, which creates the lambda as usual on
+ * first use and then folds the call site to that instance. As each captured value is the only instance of its class,
+ * every later evaluation would have captured the same values. Serialisable lambdas and those with extra marker
+ * interfaces use {@code altMetafactory} and are left alone.</p>
+ *
+ * @param singletonClasses the internal names of the classes that are only ever instantiated once, in addition to those
+ *                         found by the generateAnacondyRules task
+ */
+record SingletonLambdaTransformer(Set<String> singletonClasses) implements InsnRule {
+    private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+
+    SingletonLambdaTransformer {
+        var union = new HashSet<>(singletonClasses);
+        union.add(Utils.MINECRAFT_CLASS_NAME);
+        union.addAll(GeneratedRules.INSTANCE.singletonTypes());
+        singletonClasses = Set.copyOf(union);
+    }
+
+    @Override
+    public Set<InsnKey> keys() {
+        return Set.of(InsnKey.of(Opcodes.INVOKEDYNAMIC, LAMBDA_METAFACTORY, "metafactory"));
+    }
+
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        return (methodNode, insns, insn) -> {
+            var indyInsn = (InvokeDynamicInsnNode) insn;
+            if (indyInsn.bsmArgs.length != 3 || !capturesOnlySingletons(indyInsn.desc)) return false;
+
+            insns.set(new InvokeDynamicInsnNode(
+                    indyInsn.name,
+                    indyInsn.desc,
+                    AnacondyTransformers.HANDLE_BSM_FOLD_SINGLETON_LAMBDA,
+                    indyInsn.bsmArgs
+            ));
+            AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+            Utils.recordRewrite(this, classNode.name, methodNode);
+            return true;
+        };
+    }
+
+    /**
+     * @param factoryDesc the descriptor of the lambda's call site, whose parameters are the captured values
+     */
+    private boolean capturesOnlySingletons(String factoryDesc) {
+        var capturedTypes = Type.getArgumentTypes(factoryDesc);
+        if (capturedTypes.length == 0) return false; // already non-capturing, so already a constant
+
+        for (var capturedType : capturedTypes) {
+            if (capturedType.getSort() != Type.OBJECT || !singletonClasses.contains(capturedType.getInternalName()))
+                return false;
+        }
+        return true;
+    }
+
+    // Classes found by the generateAnacondyRules task are added to this list automatically
+    @Override
+    public @NotNull Set<Target> targets() {
+        var classNames = new HashSet<>(singletonClasses);
+        classNames.addAll(GeneratedRules.INSTANCE.singletonLambdaHolders());
+        return GeneratedRules.withGenerated(Set.of(), classNames);
+    }
+}
@@ -1,14 +1,13 @@
 package ga.ozli.minecraftmods.anacondy.transformer;
 
-import cpw.mods.modlauncher.api.ITransformer;
-import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.ITransformer.Target;
 import org.jetbrains.annotations.NotNull;
 import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.LdcInsnNode;
-import org.objectweb.asm.tree.MethodNode;
 
 import java.util.Locale;
 import java.util.Set;
@@ -20,8 +19,7 @@ import java.util.Set;
  * @param targetMethod  the method containing the static field get instruction to be transformed
  * @param getStaticName the name of the static field being accessed
  */
-record StaticFieldGetToCondy(Target targetMethod, String getStaticName, String condyName)
-        implements Transformer<MethodNode>, ITransformer<MethodNode> {
+record StaticFieldGetToCondy(Target targetMethod, String getStaticName, String condyName) implements InsnRule {
     /**
      * Assumes the field name is simply a camelCase version of the method name without the "get" prefix.
      * <p>The CONDY name will be the screaming snake case version of that.</p>
@@ -43,16 +41,14 @@ record StaticFieldGetToCondy(Target targetMethod, String getStaticName, String c
     }
 
     @Override
-    public @NotNull MethodNode transform(MethodNode methodNode, ITransformerVotingContext context) {
-        var insns = methodNode.instructions.iterator();
-        while (insns.hasNext()) {
-            var insn = insns.next();
-            if (!(insn instanceof FieldInsnNode fieldInsn
-                    && fieldInsn.getOpcode() == Opcodes.GETSTATIC
-                    && fieldInsn.name.equals(getStaticName)
-                    && fieldInsn.owner.equals(targetMethod.className())))
-                continue;
+    public Set<InsnKey> keys() {
+        return Set.of(InsnKey.of(Opcodes.GETSTATIC, targetMethod.className(), getStaticName));
+    }
 
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        return (methodNode, insns, insn) -> {
+            var fieldInsn = (FieldInsnNode) insn;
             insns.set(new LdcInsnNode(new ConstantDynamic(
                     condyName,
                     fieldInsn.desc,
@@ -60,13 +56,14 @@ record StaticFieldGetToCondy(Target targetMethod, String getStaticName, String c
                     new Handle(Opcodes.H_GETSTATIC, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, false)
             )));
             AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
-        }
-
-//            LOGGER.info("");
-//            LOGGER.info(targetMethod.elementName());
-//            LOGGER.info(ASMAPI.methodNodeToString(methodNode));
+            Utils.recordRewrite(this, targetMethod.className(), methodNode);
+            return true;
+        };
+    }
 
-        return methodNode;
+    @Override
+    public String ruleName() {
+        return "StaticFieldGetToCondy[" + condyName + ']';
     }
 
     @Override
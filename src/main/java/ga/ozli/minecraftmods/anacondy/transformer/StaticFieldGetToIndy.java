@@ -1,15 +1,13 @@
 package ga.ozli.minecraftmods.anacondy.transformer;
 
-import cpw.mods.modlauncher.api.ITransformer;
-import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.ITransformer.Target;
 import org.jetbrains.annotations.NotNull;
-import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
 
-import java.util.ListIterator;
 import java.util.Set;
 
 /**
@@ -24,8 +22,7 @@ final class StaticFieldGetToIndy {
      * null in that case. This transformer uses a dynamically resolved CallSite that intercepts the field access and
      * permanently replaces it with a constant MethodHandle once the field is non-null.
      */
-    record ConstantOnceNonNull(Target targetMethod, String getStaticName)
-        implements Transformer<MethodNode>, ITransformer<MethodNode> {
+    record ConstantOnceNonNull(Target targetMethod, String getStaticName) implements InsnRule {
         /**
          * {@link ga.ozli.minecraftmods.anacondy.AnacondyBootstraps#constantFoldWhenNonNull(java.lang.invoke.MethodHandles.Lookup, java.lang.String, java.lang.invoke.MethodType, java.lang.Class, java.lang.invoke.MethodHandle)}
          */
@@ -38,15 +35,15 @@ final class StaticFieldGetToIndy {
         );
 
         @Override
-        public @NotNull MethodNode transform(MethodNode methodNode, ITransformerVotingContext context) {
-            for (ListIterator<AbstractInsnNode> iterator = methodNode.instructions.iterator(); iterator.hasNext(); ) {
-                var insn = iterator.next();
-                if (!(insn instanceof FieldInsnNode fieldInsn
-                        && fieldInsn.getOpcode() == Opcodes.GETSTATIC
-                        && fieldInsn.name.equals(getStaticName)))
-                    continue;
-
-                iterator.set(new InvokeDynamicInsnNode(
+        public Set<InsnKey> keys() {
+            return Set.of(InsnKey.of(Opcodes.GETSTATIC, targetMethod.className(), getStaticName));
+        }
+
+        @Override
+        public Rewriter bind(ClassNode classNode) {
+            return (methodNode, insns, insn) -> {
+                var fieldInsn = (FieldInsnNode) insn;
+                insns.set(new InvokeDynamicInsnNode(
                         fieldInsn.name,
                         "()" + fieldInsn.desc,
                         HANDLE_BSM_CONSTANT_FOLD_WHEN_NON_NULL,
@@ -59,9 +56,108 @@ final class StaticFieldGetToIndy {
                                 false
                         )
                 ));
-            }
+                AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+                Utils.recordRewrite(this, targetMethod.className(), methodNode);
+                return true;
+            };
+        }
 
-            return methodNode;
+        @Override
+        public String ruleName() {
+            return "ConstantOnceNonNull[" + getStaticName + ']';
+        }
+
+        @Override
+        public @NotNull Set<Target> targets() {
+            return Set.of(targetMethod);
+        }
+    }
+
+    /**
+     * Primitive counterpart to {@link ConstantOnceNonNull} for {@code int}, {@code long}, {@code float}, {@code double}
+     * and {@code boolean} fields, treating the field as not initialised yet while it holds its default value (or the
+     * given {@code notReadyValue} sentinel) and permanently replacing it with a constant once that changes. Reads of
+     * {@code byte}, {@code short} and {@code char} fields are left alone.
+     *
+     * @param notReadyValue the value the field holds before initialisation, or null for the type's default value.
+     *                      Booleans should be given as an {@link Integer} of 0 or 1.
+     */
+    record ConstantOnceNonDefault(Target targetMethod, String getStaticName, @Nullable Object notReadyValue)
+            implements InsnRule {
+        /**
+         * {@link ga.ozli.minecraftmods.anacondy.AnacondyBootstraps#constantFoldWhenNonDefault(java.lang.invoke.MethodHandles.Lookup, java.lang.String, java.lang.invoke.MethodType, java.lang.Class, java.lang.invoke.MethodHandle)}
+         */
+        private static final Handle HANDLE_BSM_CONSTANT_FOLD_WHEN_NON_DEFAULT = new Handle(
+                Opcodes.H_INVOKESTATIC,
+                "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+                "constantFoldWhenNonDefault",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/Class;Ljava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;",
+                false
+        );
+
+        /**
+         * {@link ga.ozli.minecraftmods.anacondy.AnacondyBootstraps#constantFoldWhenNonDefault(java.lang.invoke.MethodHandles.Lookup, java.lang.String, java.lang.invoke.MethodType, java.lang.Class, java.lang.invoke.MethodHandle, java.lang.Object)}
+         */
+        private static final Handle HANDLE_BSM_CONSTANT_FOLD_WHEN_NOT_SENTINEL = new Handle(
+                Opcodes.H_INVOKESTATIC,
+                "ga/ozli/minecraftmods/anacondy/AnacondyBootstraps",
+                "constantFoldWhenNonDefault",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/Class;Ljava/lang/invoke/MethodHandle;Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+                false
+        );
+
+        /** The field types that {@code constantFoldWhenNonDefault} has a checker for */
+        private static final Set<String> SUPPORTED_DESCS = Set.of("I", "J", "F", "D", "Z");
+
+        ConstantOnceNonDefault(Target targetMethod, String getStaticName) {
+            this(targetMethod, getStaticName, null);
+        }
+
+        @Override
+        public Set<InsnKey> keys() {
+            return Set.of(InsnKey.of(Opcodes.GETSTATIC, targetMethod.className(), getStaticName));
+        }
+
+        @Override
+        public Rewriter bind(ClassNode classNode) {
+            return (methodNode, insns, insn) -> {
+                var fieldInsn = (FieldInsnNode) insn;
+                // byte, short and char fields would fail to link, so leave them as plain reads
+                if (!SUPPORTED_DESCS.contains(fieldInsn.desc)) {
+                    AnacondyTransformers.LOGGER.warn(
+                            "Not folding {}.{} as {} fields aren't supported by ConstantOnceNonDefault",
+                            fieldInsn.owner, fieldInsn.name, fieldInsn.desc
+                    );
+                    return false;
+                }
+
+                var fieldGetter = new Handle(Opcodes.H_GETSTATIC, fieldInsn.owner, fieldInsn.name, fieldInsn.desc, false);
+                insns.set(notReadyValue == null
+                        ? new InvokeDynamicInsnNode(
+                                fieldInsn.name,
+                                "()" + fieldInsn.desc,
+                                HANDLE_BSM_CONSTANT_FOLD_WHEN_NON_DEFAULT,
+                                Type.getObjectType(fieldInsn.owner),
+                                fieldGetter
+                        )
+                        : new InvokeDynamicInsnNode(
+                                fieldInsn.name,
+                                "()" + fieldInsn.desc,
+                                HANDLE_BSM_CONSTANT_FOLD_WHEN_NOT_SENTINEL,
+                                Type.getObjectType(fieldInsn.owner),
+                                fieldGetter,
+                                notReadyValue
+                        )
+                );
+                AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+                Utils.recordRewrite(this, targetMethod.className(), methodNode);
+                return true;
+            };
+        }
+
+        @Override
+        public String ruleName() {
+            return "ConstantOnceNonDefault[" + getStaticName + ']';
         }
 
         @Override
@@ -73,11 +169,11 @@ final class StaticFieldGetToIndy {
     /**
      * Transformer for static fields that are "mostly constant"/rarely changed. This transformer intercepts the field
      * setters to update the associated getter's CallSite target to a constant handle, allowing for more aggressive
-     * constant folding. This should be used sparingly, as frequent changes to the field forces the JVM to de-optimise
-     * back to interpreted mode until the JIT re-optimises it.
+     * constant folding. Frequent changes to the field force the JVM to de-optimise back to interpreted mode until the
+     * JIT re-optimises it, so fields written more often than the {@code anacondy.mostlyConstant.writeBudget} per
+     * {@code anacondy.mostlyConstant.windowMillis} are permanently demoted back to plain field reads.
      */
-    record MostlyConstant(Target targetClass, String staticFieldName)
-            implements Transformer<ClassNode>, ITransformer<ClassNode> {
+    record MostlyConstant(Target targetClass, String staticFieldName) implements InsnRule {
         private static final Handle HANDLE_BSM_MOSTLY_CONSTANT_FIELD_GETTER;
         private static final Handle HANDLE_BSM_MOSTLY_CONSTANT_FIELD_SETTER;
         static {
@@ -100,22 +196,20 @@ final class StaticFieldGetToIndy {
         }
 
         @Override
-        public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
-            for (var methodNode : classNode.methods)
-                transformMethod(methodNode);
-
-            return classNode;
+        public Set<InsnKey> keys() {
+            return Set.of(
+                    InsnKey.of(Opcodes.GETSTATIC, targetClass.className(), staticFieldName),
+                    InsnKey.of(Opcodes.PUTSTATIC, targetClass.className(), staticFieldName)
+            );
         }
 
-        private void transformMethod(MethodNode methodNode) {
-            for (ListIterator<AbstractInsnNode> iterator = methodNode.instructions.iterator(); iterator.hasNext(); ) {
-                var insn = iterator.next();
-                if (!(insn instanceof FieldInsnNode fieldInsn && fieldInsn.name.equals(staticFieldName)))
-                    continue;
-
+        @Override
+        public Rewriter bind(ClassNode classNode) {
+            return (methodNode, insns, insn) -> {
+                var fieldInsn = (FieldInsnNode) insn;
                 switch (fieldInsn.getOpcode()) {
                     case Opcodes.GETSTATIC ->
-                            iterator.set(new InvokeDynamicInsnNode(
+                            insns.set(new InvokeDynamicInsnNode(
                                     fieldInsn.name,
                                     "()" + fieldInsn.desc,
                                     HANDLE_BSM_MOSTLY_CONSTANT_FIELD_GETTER,
@@ -130,7 +224,7 @@ final class StaticFieldGetToIndy {
                                     )
                             ));
                     case Opcodes.PUTSTATIC ->
-                            iterator.set(new InvokeDynamicInsnNode(
+                            insns.set(new InvokeDynamicInsnNode(
                                     fieldInsn.name,
                                     "(" + fieldInsn.desc + ")V",
                                     HANDLE_BSM_MOSTLY_CONSTANT_FIELD_SETTER,
@@ -143,9 +237,18 @@ final class StaticFieldGetToIndy {
                                             false
                                     )
                             ));
-                    default -> {}
+                    default -> {
+                        return false;
+                    }
                 }
-            }
+                Utils.recordRewrite(this, classNode.name, methodNode);
+                return true;
+            };
+        }
+
+        @Override
+        public String ruleName() {
+            return "MostlyConstant[" + staticFieldName + ']';
         }
 
         @Override
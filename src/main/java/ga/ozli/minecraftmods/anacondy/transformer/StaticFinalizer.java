@@ -0,0 +1,87 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.NonNull;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+
+import java.lang.constant.ConstantDescs;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Adds {@code ACC_FINAL} to the static fields that the generateAnacondyRules task found to only ever be written by
+ * their own class' static initialiser, letting the JIT constant fold them like any other static final.
+ * <p>Each field is checked again against the class as it's being loaded, in case it has been changed since the game
+ * was scanned. Fields that fail the check are left as they are. Fields that failed the check at build time because
+ * they're set later on are instead folded through their getters with {@link StaticFieldGetToIndy.ConstantOnceNonNull}
+ * where possible.</p>
+ * <p>Only writes from the game and Forge are seen by the scan, and a write from another mod to a field finalised here
+ * would fail with an {@link IllegalAccessError}, so this is opt-in with {@code -Danacondy.staticFinalizer=true}.</p>
+ */
+record StaticFinalizer(Set<Target> targets) implements Transformer<ClassNode>, ITransformer<ClassNode> {
+    static final boolean ENABLED = Boolean.getBoolean("anacondy.staticFinalizer");
+
+    @Override
+    public @NonNull ClassNode transform(ClassNode classNode, ITransformerVotingContext context) {
+        var generated = GeneratedRules.INSTANCE.effectivelyFinalFieldNames(classNode.name, true);
+        if (generated.isEmpty()) return classNode;
+
+        var candidates = new HashSet<>(generated);
+        removeWrittenOutsideClassInit(classNode, candidates);
+
+        for (var fieldNode : classNode.fields) {
+            if ((fieldNode.access & Opcodes.ACC_STATIC) == 0 || (fieldNode.access & Opcodes.ACC_FINAL) != 0) continue;
+
+            if (candidates.contains(fieldNode.name)) {
+                fieldNode.access |= Opcodes.ACC_FINAL;
+                AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+            } else if (generated.contains(fieldNode.name)) {
+                AnacondyTransformers.LOGGER.debug(
+                        "Not finalising {}.{} as it's now written outside the static initialiser",
+                        classNode.name, fieldNode.name
+                );
+            }
+        }
+
+        return classNode;
+    }
+
+    private static void removeWrittenOutsideClassInit(ClassNode classNode, Set<String> candidates) {
+        for (var methodNode : classNode.methods) {
+            var isClassInit = methodNode.name.equals(ConstantDescs.CLASS_INIT_NAME);
+            for (var insn : methodNode.instructions) {
+                switch (insn) {
+                    case FieldInsnNode fieldInsn when !isClassInit
+                            && fieldInsn.getOpcode() == Opcodes.PUTSTATIC
+                            && fieldInsn.owner.equals(classNode.name) -> candidates.remove(fieldInsn.name);
+                    case LdcInsnNode ldcInsn when ldcInsn.cst instanceof Handle handle ->
+                            removeIfWritten(candidates, classNode.name, handle);
+                    case InvokeDynamicInsnNode indyInsn -> {
+                        for (var bsmArg : indyInsn.bsmArgs) {
+                            if (bsmArg instanceof Handle handle)
+                                removeIfWritten(candidates, classNode.name, handle);
+                        }
+                    }
+                    default -> {}
+                }
+            }
+        }
+    }
+
+    private static void removeIfWritten(Set<String> candidates, String owner, Handle handle) {
+        if (handle.getTag() == Opcodes.H_PUTSTATIC && handle.getOwner().equals(owner))
+            candidates.remove(handle.getName());
+    }
+
+    @Override
+    public @NotNull Set<Target> targets() {
+        return targets;
+    }
+}
@@ -0,0 +1,183 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import cpw.mods.modlauncher.api.ITransformer.Target;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Rewrites switches on enums from other classes to switch on the enum's ordinals directly. javac compiles these to
+ * {@code switch ($SwitchMap$SomeEnum[value.ordinal()])}, where the synthetic array maps each ordinal to a case key,
+ * costing a static load, a bounds check and an array read on every switch.
+ * <p>The arrays are filled in by static initialisers, so are read by the generateAnacondyRules task instead, along with
+ * the ordinals of the enum constants at the time. The rewritten switch is guarded by a ConstantDynamic checking that
+ * the ordinals still match, falling back to the original switch if a mod has reordered the enum. As the guard is a
+ * constant, the JIT removes whichever path isn't taken.</p>
+ *
+ * @param switchMaps the switch maps found by the generateAnacondyRules task
+ */
+record SwitchMapTransformer(Set<GeneratedRules.SwitchMap> switchMaps) implements InsnRule {
+    @Override
+    public Set<InsnKey> keys() {
+        return switchMaps.stream()
+                .map(switchMap -> new InsnKey(Opcodes.GETSTATIC, switchMap.holder(), switchMap.fieldName(), "[I"))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Override
+    public Rewriter bind(ClassNode classNode) {
+        var byField = new HashMap<String, GeneratedRules.SwitchMap>();
+        for (var switchMap : switchMaps)
+            byField.put(switchMap.holder() + '.' + switchMap.fieldName(), switchMap);
+
+        return (methodNode, insns, insn) -> {
+            var fieldInsn = (FieldInsnNode) insn;
+            var switchMap = byField.get(fieldInsn.owner + '.' + fieldInsn.name);
+            if (switchMap == null) return false;
+
+            // Expect `GETSTATIC map; <enum value>; INVOKEVIRTUAL ordinal(); IALOAD; <switch>`
+            var ordinalCall = findOrdinalCall(insn, switchMap.enumClass());
+            if (ordinalCall == null) return false;
+
+            var arrayLoad = nextRealInsn(ordinalCall);
+            var originalSwitch = nextRealInsn(arrayLoad);
+            if (arrayLoad == null || arrayLoad.getOpcode() != Opcodes.IALOAD) return false;
+
+            var ordinalSwitch = toOrdinalSwitch(originalSwitch, switchMap);
+            if (ordinalSwitch == null) return false;
+
+            // <enum value>; INVOKEVIRTUAL ordinal(); LDC ordinalsMatch; IFEQ fallback; <ordinal switch>;
+            // fallback: GETSTATIC map; SWAP; IALOAD; <original switch>
+            var fallback = new LabelNode();
+            var guardedSwitch = new InsnList();
+            guardedSwitch.add(new LdcInsnNode(new ConstantDynamic(
+                    "ORDINALS_MATCH",
+                    Type.BOOLEAN_TYPE.getDescriptor(),
+                    AnacondyTransformers.HANDLE_BSM_ENUM_ORDINALS_MATCH,
+                    Type.getObjectType(switchMap.enumClass()),
+                    expectedOrdinals(switchMap)
+            )));
+            guardedSwitch.add(new JumpInsnNode(Opcodes.IFEQ, fallback));
+            guardedSwitch.add(ordinalSwitch);
+            guardedSwitch.add(fallback);
+            guardedSwitch.add(new FieldInsnNode(Opcodes.GETSTATIC, fieldInsn.owner, fieldInsn.name, fieldInsn.desc));
+            guardedSwitch.add(new InsnNode(Opcodes.SWAP));
+            methodNode.instructions.insertBefore(arrayLoad, guardedSwitch);
+
+            insns.set(new InsnNode(Opcodes.NOP));
+            AnacondyTransformers.TOTAL_REWRITES.getAndIncrement();
+            Utils.recordRewrite(this, classNode.name, methodNode);
+            return true;
+        };
+    }
+
+    /**
+     * @return the {@code ordinal()} call whose result indexes the switch map loaded by the given instruction, or null
+     * if the code in between has any control flow of its own
+     */
+    private static @Nullable MethodInsnNode findOrdinalCall(AbstractInsnNode switchMapLoad, String enumClass) {
+        for (var insn = switchMapLoad.getNext(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof MethodInsnNode methodInsn
+                    && methodInsn.getOpcode() == Opcodes.INVOKEVIRTUAL
+                    && methodInsn.owner.equals(enumClass)
+                    && methodInsn.name.equals("ordinal")
+                    && methodInsn.desc.equals("()I"))
+                return methodInsn;
+
+            if (insn instanceof JumpInsnNode || insn instanceof TableSwitchInsnNode
+                    || insn instanceof LookupSwitchInsnNode || insn.getOpcode() == Opcodes.ATHROW)
+                return null;
+
+            // another switch map load means this one's switch is nested in something else
+            if (insn instanceof FieldInsnNode otherFieldInsn && otherFieldInsn.getOpcode() == Opcodes.GETSTATIC
+                    && otherFieldInsn.name.startsWith("$SwitchMap$"))
+                return null;
+        }
+        return null;
+    }
+
+    private static @Nullable AbstractInsnNode nextRealInsn(@Nullable AbstractInsnNode insn) {
+        if (insn == null) return null;
+
+        var next = insn.getNext();
+        while (next != null && next.getOpcode() < 0)
+            next = next.getNext();
+        return next;
+    }
+
+    /**
+     * @return a copy of the given switch keyed by the ordinals of the enum constants its keys stand for, or null if it
+     * isn't a switch or has a key that isn't in the switch map
+     */
+    private static @Nullable LookupSwitchInsnNode toOrdinalSwitch(
+            @Nullable AbstractInsnNode switchInsn,
+            GeneratedRules.SwitchMap switchMap
+    ) {
+        var labelsByKey = new TreeMap<Integer, LabelNode>();
+        LabelNode defaultLabel;
+        switch (switchInsn) {
+            case TableSwitchInsnNode tableSwitchInsn -> {
+                defaultLabel = tableSwitchInsn.dflt;
+                for (int i = 0; i < tableSwitchInsn.labels.size(); i++) {
+                    var label = tableSwitchInsn.labels.get(i);
+                    if (label != defaultLabel)
+                        labelsByKey.put(tableSwitchInsn.min + i, label);
+                }
+            }
+            case LookupSwitchInsnNode lookupSwitchInsn -> {
+                defaultLabel = lookupSwitchInsn.dflt;
+                for (int i = 0; i < lookupSwitchInsn.keys.size(); i++)
+                    labelsByKey.put(lookupSwitchInsn.keys.get(i), lookupSwitchInsn.labels.get(i));
+            }
+            case null, default -> {
+                return null;
+            }
+        }
+
+        var labelsByOrdinal = new TreeMap<Integer, LabelNode>();
+        for (var entry : labelsByKey.entrySet()) {
+            var constant = switchMap.constantsByKey().get(entry.getKey());
+            if (constant == null) return null;
+
+            labelsByOrdinal.put(switchMap.ordinals().get(constant), entry.getValue());
+        }
+
+        return new LookupSwitchInsnNode(
+                defaultLabel,
+                labelsByOrdinal.keySet().stream().mapToInt(Integer::intValue).toArray(),
+                labelsByOrdinal.values().toArray(LabelNode[]::new)
+        );
+    }
+
+    private static String expectedOrdinals(GeneratedRules.SwitchMap switchMap) {
+        return switchMap.ordinals().entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(entry -> entry.getKey() + ':' + entry.getValue())
+                .collect(Collectors.joining(","));
+    }
+
+    // Classes found by the generateAnacondyRules task are added to this list automatically
+    @Override
+    public @NotNull Set<Target> targets() {
+        return GeneratedRules.withGenerated(Set.of(), GeneratedRules.INSTANCE.switchMapReaders());
+    }
+}
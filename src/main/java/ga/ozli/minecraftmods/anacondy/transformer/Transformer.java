@@ -5,8 +5,8 @@ import cpw.mods.modlauncher.api.ITransformerVotingContext;
 import cpw.mods.modlauncher.api.TransformerVoteResult;
 import org.jetbrains.annotations.NotNull;
 
-sealed interface Transformer<T> extends ITransformer<T>
-        permits ClassToRecordTransformer, DebugEntrySystemSpecsTransformer, MinecraftClientFieldCopiesTransformer, SingletonAccessedFieldsTransformer, SingletonAccessedForeignFieldsTransformer, StaticFieldGetToCondy, StaticFieldGetToIndy.ConstantOnceNonNull, StaticFieldGetToIndy.MostlyConstant, Workarounds.MakeFieldAccessible, Workarounds.MinecraftClientAddGetWindowNoInlineMethodTransformer, Workarounds.OptionsGetFullscreenVideoModeStringFixer {
+sealed interface Transformer<T> extends ITransformer<T>, Rule
+        permits BootstrapTracker, ClassToRecordTransformer, IdentifierInternTransformer, RegistryFreezeTracker, RewriteEngine, SingletonInitTracker, StaticFinalizer, Workarounds.MakeFieldAccessible {
     @Override
     default @NotNull TransformerVoteResult castVote(ITransformerVotingContext context) {
         return TransformerVoteResult.YES;
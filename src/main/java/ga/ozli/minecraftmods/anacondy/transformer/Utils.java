@@ -1,5 +1,6 @@
 package ga.ozli.minecraftmods.anacondy.transformer;
 
+import ga.ozli.minecraftmods.anacondy.DeoptimizationMonitor;
 import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
@@ -29,6 +30,37 @@ final class Utils {
         );
     }
 
+    /**
+     * Creates a ConstantDynamic that resolves to the non-null result of invoking the given handle with the given
+     * static args, using the arity-specialised {@code AnacondyBootstraps#invokeNonNull} overload where available to
+     * avoid the varargs one's {@code MethodHandle#invokeWithArguments} call.
+     */
+    static ConstantDynamic invokeNonNullCondy(String name, String descriptor, Handle handle, Object... handleArgs) {
+        var bsmArgs = new Object[handleArgs.length + 1];
+        bsmArgs[0] = handle;
+        System.arraycopy(handleArgs, 0, bsmArgs, 1, handleArgs.length);
+
+        return new ConstantDynamic(
+                name,
+                descriptor,
+                switch (handleArgs.length) {
+                    case 0 -> AnacondyTransformers.HANDLE_BSM_INVOKE_NON_NULL;
+                    case 1 -> AnacondyTransformers.HANDLE_BSM_INVOKE_NON_NULL_1_ARG;
+                    case 2 -> AnacondyTransformers.HANDLE_BSM_INVOKE_NON_NULL_2_ARGS;
+                    default -> AnacondyTransformers.HANDLE_BSM_INVOKE_NON_NULL_WITH_ARGS;
+                },
+                bsmArgs
+        );
+    }
+
+    /**
+     * Records a rewrite inside the given method for deoptimisation attribution.
+     * @param owner the internal name of the class declaring the method
+     */
+    static void recordRewrite(Rule rule, String owner, MethodNode methodNode) {
+        DeoptimizationMonitor.recordRewrite(rule.ruleName(), owner, methodNode.name, methodNode.desc);
+    }
+
     static String toInternalName(ClassDesc classDesc) {
         var descStr = classDesc.descriptorString();
         return descStr.substring(1, descStr.length() - 1);
@@ -20,6 +20,8 @@ module ga.ozli.minecraftmods.anacondy {
 
     requires org.slf4j;
 
+    requires jdk.jfr;
+
     exports ga.ozli.minecraftmods.anacondy;
 
     // remember to update the legacy META-INF/services files as well
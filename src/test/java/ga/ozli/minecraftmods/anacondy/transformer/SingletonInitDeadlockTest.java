@@ -0,0 +1,278 @@
+package ga.ozli.minecraftmods.anacondy.transformer;
+
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.lang.constant.ConstantDescs;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static cpw.mods.modlauncher.api.ITransformer.Target.targetClass;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reproduces the startup deadlock that {@link FieldResolution#AFTER_SINGLETON_INIT} exists for, using a synthetic
+ * singleton that hands itself to a class read on another thread and waits for it partway through its own construction,
+ * the way {@code Minecraft} does with its renderers.
+ * <p>Rather than timing out, a read is known to be deadlocked once its CONDY resolution has asked for the singleton,
+ * as the singleton's class can't finish initialising until the constructor waiting on that read has returned.</p>
+ */
+@Timeout(10)
+public class SingletonInitDeadlockTest {
+    private static final String OWNER = "synthetic/Owner";
+    private static final String READER = "synthetic/Reader";
+
+    private static final ConstantDynamic CONDY_OWNER_GET_INSTANCE = new ConstantDynamic(
+            "OWNER_INSTANCE",
+            "L" + OWNER + ";",
+            AnacondyTransformers.HANDLE_BSM_INVOKE_NON_NULL,
+            new Handle(
+                    Opcodes.H_INVOKESTATIC,
+                    SingletonInitDeadlockTest.class.getName().replace('.', '/'),
+                    "getOwnerInstance",
+                    "()Ljava/lang/Object;",
+                    false
+            )
+    );
+
+    private static volatile @Nullable ClassLoader syntheticLoader;
+    private static volatile @Nullable Thread readerThread;
+    private static volatile CompletableFuture<@Nullable Object> readResult = new CompletableFuture<>();
+    /** Completed once the read's CONDY resolution needs the singleton instance */
+    private static volatile CompletableFuture<@Nullable Void> ownerRequested = new CompletableFuture<>();
+
+    private static volatile boolean readFinishedDuringConstruction;
+    private static volatile @Nullable Object valueReadDuringConstruction;
+
+    @AfterEach
+    void joinReaderThread() throws InterruptedException {
+        var thread = readerThread;
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Test
+    void condyResolutionDeadlocksDuringConstruction() throws Exception {
+        var loader = load(FieldResolution.CONDY, false);
+        Class.forName("synthetic.Owner", true, loader);
+
+        // The other thread's CONDY resolution calls getInstance(), which waits for the constructor to return
+        assertFalse(readFinishedDuringConstruction, "CONDY resolved while the singleton was being constructed");
+        assertEquals("ready", readResult.get());
+    }
+
+    @Test
+    void afterSingletonInitReadsLiveDuringConstruction() throws Exception {
+        var loader = load(FieldResolution.AFTER_SINGLETON_INIT, true);
+        Class.forName("synthetic.Owner", true, loader);
+
+        assertTrue(readFinishedDuringConstruction, "Read deadlocked while the singleton was being constructed");
+        assertEquals("early", valueReadDuringConstruction);
+    }
+
+    @Test
+    void afterSingletonInitFoldsOnceConstructed() throws Exception {
+        var loader = load(FieldResolution.AFTER_SINGLETON_INIT, true);
+        var ownerClass = Class.forName("synthetic.Owner", true, loader);
+        var owner = ownerClass.getMethod("getInstance").invoke(null);
+        var reader = newReader(owner);
+        var read = reader.getClass().getMethod("read");
+
+        // The read during construction saw "early", which must not have been folded
+        assertEquals("ready", read.invoke(reader));
+
+        ownerClass.getField("value").set(owner, "changed");
+        assertEquals("ready", read.invoke(reader));
+    }
+
+    /**
+     * Called by the synthetic singleton's constructor after assigning {@code value = "early"}. Reads the field from
+     * another thread through the transformed reader, waiting until the read either finishes or deadlocks.
+     */
+    @SuppressWarnings("unused") // called by the synthetic singleton
+    public static void readOnOtherThread(Object owner) throws Exception {
+        var reader = newReader(owner);
+        var read = reader.getClass().getMethod("read");
+
+        var result = readResult;
+        var thread = new Thread(() -> {
+            try {
+                result.complete(read.invoke(reader));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, "Synthetic singleton reader");
+        readerThread = thread;
+        thread.start();
+
+        CompletableFuture.anyOf(result, ownerRequested).get();
+
+        // If the singleton was requested, the read can't finish until this constructor returns
+        readFinishedDuringConstruction = result.isDone();
+        if (readFinishedDuringConstruction)
+            valueReadDuringConstruction = result.get();
+    }
+
+    /**
+     * The getter behind the reader's {@code OWNER_INSTANCE} CONDY, equivalent to {@code Owner.getInstance()} other than
+     * signalling that it's been reached before waiting for {@code Owner} to finish initialising.
+     */
+    @SuppressWarnings("unused") // called by the CONDY
+    public static Object getOwnerInstance() throws Exception {
+        ownerRequested.complete(null);
+        return Class.forName("synthetic.Owner", true, syntheticLoader).getMethod("getInstance").invoke(null);
+    }
+
+    private static Object newReader(Object owner) throws Exception {
+        return owner.getClass().getClassLoader()
+                .loadClass("synthetic.Reader")
+                .getConstructor(owner.getClass())
+                .newInstance(owner);
+    }
+
+    /**
+     * Transforms the synthetic classes as Anacondy would and defines them in a fresh class loader.
+     * @param trackInit whether to signal the end of the singleton's construction with {@link SingletonInitTracker}
+     */
+    private static ClassLoader load(FieldResolution resolution, boolean trackInit) {
+        readerThread = null;
+        readResult = new CompletableFuture<>();
+        ownerRequested = new CompletableFuture<>();
+        readFinishedDuringConstruction = false;
+        valueReadDuringConstruction = null;
+
+        var owner = owner();
+        if (trackInit)
+            new SingletonInitTracker(targetClass(OWNER)).transform(owner, null);
+
+        var rule = new SingletonAccessedForeignFieldsTransformer(
+                Set.of(targetClass(READER)), CONDY_OWNER_GET_INSTANCE, Set.of("value"), resolution
+        );
+        var reader = new RewriteEngine(List.of(rule)).transform(reader(), null);
+
+        var classes = Map.of("synthetic.Owner", write(owner), "synthetic.Reader", write(reader));
+        var loader = new ClassLoader(SingletonInitDeadlockTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                var bytes = classes.get(name);
+                if (bytes == null) throw new ClassNotFoundException(name);
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+        syntheticLoader = loader;
+        return loader;
+    }
+
+    /**
+     * {@code Owner.INSTANCE} is created in the static initialiser, so {@code getInstance()} blocks on other threads
+     * until the constructor has returned. The constructor hands itself to {@link #readOnOtherThread(Object)} between
+     * assigning {@code value = "early"} and {@code value = "ready"}.
+     */
+    private static ClassNode owner() {
+        var cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V21, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, OWNER, null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "INSTANCE", "L" + OWNER + ";", null, null).visitEnd();
+        cw.visitField(Opcodes.ACC_PUBLIC, "value", "Ljava/lang/Object;", null, null).visitEnd();
+
+        var clinit = cw.visitMethod(Opcodes.ACC_STATIC, ConstantDescs.CLASS_INIT_NAME, "()V", null, null);
+        clinit.visitCode();
+        clinit.visitTypeInsn(Opcodes.NEW, OWNER);
+        clinit.visitInsn(Opcodes.DUP);
+        clinit.visitMethodInsn(Opcodes.INVOKESPECIAL, OWNER, ConstantDescs.INIT_NAME, "()V", false);
+        clinit.visitFieldInsn(Opcodes.PUTSTATIC, OWNER, "INSTANCE", "L" + OWNER + ";");
+        clinit.visitInsn(Opcodes.RETURN);
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+
+        var init = cw.visitMethod(Opcodes.ACC_PRIVATE, ConstantDescs.INIT_NAME, "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", ConstantDescs.INIT_NAME, "()V", false);
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitLdcInsn("early");
+        init.visitFieldInsn(Opcodes.PUTFIELD, OWNER, "value", "Ljava/lang/Object;");
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(
+                Opcodes.INVOKESTATIC,
+                SingletonInitDeadlockTest.class.getName().replace('.', '/'),
+                "readOnOtherThread",
+                "(Ljava/lang/Object;)V",
+                false
+        );
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitLdcInsn("ready");
+        init.visitFieldInsn(Opcodes.PUTFIELD, OWNER, "value", "Ljava/lang/Object;");
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        var getInstance = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "getInstance", "()L" + OWNER + ";", null, null);
+        getInstance.visitCode();
+        getInstance.visitFieldInsn(Opcodes.GETSTATIC, OWNER, "INSTANCE", "L" + OWNER + ";");
+        getInstance.visitInsn(Opcodes.ARETURN);
+        getInstance.visitMaxs(0, 0);
+        getInstance.visitEnd();
+
+        cw.visitEnd();
+        return read(cw.toByteArray());
+    }
+
+    /**
+     * Like the renderers {@code Minecraft} constructs, {@code Reader} is given the singleton in its constructor and
+     * {@code read()} does {@code var owner = this.owner; return owner.value;}.
+     */
+    private static ClassNode reader() {
+        var cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V21, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, READER, null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "owner", "L" + OWNER + ";", null, null).visitEnd();
+
+        var init = cw.visitMethod(Opcodes.ACC_PUBLIC, ConstantDescs.INIT_NAME, "(L" + OWNER + ";)V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", ConstantDescs.INIT_NAME, "()V", false);
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 1);
+        init.visitFieldInsn(Opcodes.PUTFIELD, READER, "owner", "L" + OWNER + ";");
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        var read = cw.visitMethod(Opcodes.ACC_PUBLIC, "read", "()Ljava/lang/Object;", null, null);
+        read.visitCode();
+        read.visitVarInsn(Opcodes.ALOAD, 0);
+        read.visitFieldInsn(Opcodes.GETFIELD, READER, "owner", "L" + OWNER + ";");
+        read.visitVarInsn(Opcodes.ASTORE, 1);
+        read.visitVarInsn(Opcodes.ALOAD, 1);
+        read.visitFieldInsn(Opcodes.GETFIELD, OWNER, "value", "Ljava/lang/Object;");
+        read.visitInsn(Opcodes.ARETURN);
+        read.visitMaxs(0, 0);
+        read.visitEnd();
+
+        cw.visitEnd();
+        return read(cw.toByteArray());
+    }
+
+    private static ClassNode read(byte[] bytes) {
+        var classNode = new ClassNode();
+        new ClassReader(bytes).accept(classNode, 0);
+        return classNode;
+    }
+
+    private static byte[] write(ClassNode classNode) {
+        var cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classNode.accept(cw);
+        return cw.toByteArray();
+    }
+}